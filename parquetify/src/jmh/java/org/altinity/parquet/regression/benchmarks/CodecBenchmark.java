@@ -0,0 +1,70 @@
+package org.altinity.parquet.regression.benchmarks;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second written for {@code generator.json} with every compression codec whose
+ * implementation is on the classpath (LZO, BROTLI and Hadoop's LZ4 need extra libraries), for both
+ * writer versions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    static final int ROWS = 50_000;
+
+    @Param({"UNCOMPRESSED", "SNAPPY", "GZIP", "LZ4_RAW", "ZSTD"})
+    public String compression;
+
+    @Param({"1.0", "2.0"})
+    public String writerVersion;
+
+    private Path directory;
+    private Object definition;
+    private Object context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Parquetify.silenceStdout();
+        directory = Files.createTempDirectory("parquetify-jmh");
+        JSONObject json = Parquetify.loadExample("generator.json", ROWS);
+        json.getJSONObject("options")
+                .put("compression", compression)
+                .put("writerVersion", writerVersion);
+        definition = Parquetify.prepare(json, directory);
+        context = Parquetify.newContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Parquetify.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long write() throws Throwable {
+        return Parquetify.generate(definition, directory.resolve("output.parquet"), context);
+    }
+}
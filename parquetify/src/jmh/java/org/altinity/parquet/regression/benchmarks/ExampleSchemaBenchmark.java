@@ -0,0 +1,69 @@
+package org.altinity.parquet.regression.benchmarks;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second written for the example schemas, with their inline data repeated to
+ * {@value #ROWS} rows. Covers flat primitives, strings, decimals, UUID, FLOAT16, dates and times,
+ * tuples, arrays and maps, through both write supports.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleSchemaBenchmark {
+
+    static final int ROWS = 20_000;
+
+    @Param({"int.json", "uint.json", "string.json", "utf8.json", "decimal.json", "uuid.json", "float16.json",
+            "date.json", "time.json", "tuple.json", "nested_tuple.json", "array.json", "nested_array.json"})
+    public String example;
+
+    @Param({"direct", "group"})
+    public String writeSupport;
+
+    private Path directory;
+    private Object definition;
+    private Object context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Parquetify.silenceStdout();
+        directory = Files.createTempDirectory("parquetify-jmh");
+        JSONObject json = Parquetify.loadExample(example, ROWS);
+        json.getJSONObject("options").put("writeSupport", writeSupport);
+        definition = Parquetify.prepare(json, directory);
+        context = Parquetify.newContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Parquetify.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long write() throws Throwable {
+        return Parquetify.generate(definition, directory.resolve("output.parquet"), context);
+    }
+}
@@ -0,0 +1,129 @@
+package org.altinity.parquet.regression.benchmarks;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second written for a LIST of {@code width} structs per row, each nested {@code depth}
+ * groups deep around an INT32 and a MAP of {@value #MAP_ENTRIES} entries. Every row has the same
+ * number of values whatever the depth, so the scores show how the cost of shredding grows with the
+ * nesting alone.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NestedShreddingBenchmark {
+
+    static final int ROWS = 5_000;
+    static final int MAP_ENTRIES = 4;
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    @Param({"4", "32"})
+    public int width;
+
+    @Param({"direct", "group"})
+    public String writeSupport;
+
+    private Path directory;
+    private Object definition;
+    private Object context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Parquetify.silenceStdout();
+        directory = Files.createTempDirectory("parquetify-jmh");
+        JSONObject column = new JSONObject()
+                .put("name", "items")
+                .put("schemaType", "optionalGroup")
+                .put("logicalType", "LIST")
+                .put("fields", new JSONArray().put(new JSONObject()
+                        .put("name", "list")
+                        .put("schemaType", "repeatedGroup")
+                        .put("fields", new JSONArray().put(new JSONObject()
+                                .put("name", "element")
+                                .put("schemaType", "optionalGroup")
+                                .put("fields", structFields(1))))));
+        JSONArray data = new JSONArray();
+        for (int row = 0; row < ROWS; row++) {
+            JSONArray elements = new JSONArray();
+            for (int i = 0; i < width; i++) {
+                elements.put(new JSONObject().put("element", structValue(1, row * width + i)));
+            }
+            data.put(new JSONObject().put("list", elements));
+        }
+        column.put("data", data);
+        JSONObject json = new JSONObject()
+                .put("fileName", "nested.parquet")
+                .put("options", new JSONObject().put("writeSupport", writeSupport))
+                .put("rows", ROWS)
+                .put("schema", new JSONArray().put(column));
+        definition = Parquetify.prepare(json, directory);
+        context = Parquetify.newContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Parquetify.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long write() throws Throwable {
+        return Parquetify.generate(definition, directory.resolve("output.parquet"), context);
+    }
+
+    private JSONArray structFields(int level) {
+        if (level < depth) {
+            return new JSONArray().put(new JSONObject()
+                    .put("name", "nested")
+                    .put("schemaType", "optionalGroup")
+                    .put("fields", structFields(level + 1)));
+        }
+        JSONObject entry = new JSONObject()
+                .put("name", "key_value")
+                .put("schemaType", "repeatedGroup")
+                .put("fields", new JSONArray()
+                        .put(new JSONObject().put("name", "key").put("schemaType", "required")
+                                .put("physicalType", "BINARY").put("logicalType", "STRING"))
+                        .put(new JSONObject().put("name", "value").put("schemaType", "optional")
+                                .put("physicalType", "INT32")));
+        return new JSONArray()
+                .put(new JSONObject().put("name", "id").put("schemaType", "optional").put("physicalType", "INT32"))
+                .put(new JSONObject().put("name", "attributes").put("schemaType", "optionalGroup")
+                        .put("logicalType", "MAP").put("fields", new JSONArray().put(entry)));
+    }
+
+    private JSONObject structValue(int level, int id) {
+        if (level < depth) {
+            return new JSONObject().put("nested", structValue(level + 1, id));
+        }
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < MAP_ENTRIES; i++) {
+            entries.put(new JSONObject().put("key", "key" + i).put("value", id + i));
+        }
+        return new JSONObject().put("id", id).put("attributes", new JSONObject().put("key_value", entries));
+    }
+}
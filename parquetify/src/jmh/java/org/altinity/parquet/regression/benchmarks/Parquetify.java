@@ -0,0 +1,137 @@
+package org.altinity.parquet.regression.benchmarks;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Access to the generator classes, which live in the unnamed package and therefore can only be
+ * reached reflectively from the benchmarks. Handles are resolved once and invoked exactly.
+ */
+final class Parquetify {
+
+    static final MethodHandle READ_DEFINITION;
+    static final MethodHandle GENERATE_PARQUET;
+    static final MethodHandle NEW_CONTEXT;
+    static final MethodHandle NEW_METRICS;
+    static final MethodHandle ENCODE_FLOAT16;
+    static final MethodHandle HEX_TO_BYTES;
+
+    static {
+        try {
+            Class<?> generator = Class.forName("GenerateParquet");
+            Class<?> definition = Class.forName("Definition");
+            Class<?> metrics = Class.forName("WriteMetrics");
+            Class<?> context = Class.forName("GenerateParquet$GenerationContext");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            Method read = definition.getDeclaredMethod("read", Path.class);
+            read.setAccessible(true);
+            READ_DEFINITION = lookup.unreflect(read).asType(MethodType.methodType(Object.class, Path.class));
+
+            Method generate = generator.getDeclaredMethod("generateParquet", definition, String.class, context, int.class, metrics);
+            generate.setAccessible(true);
+            GENERATE_PARQUET = lookup.unreflect(generate)
+                    .asType(MethodType.methodType(long.class, Object.class, String.class, Object.class, int.class, Object.class));
+
+            Constructor<?> newContext = context.getDeclaredConstructor(boolean.class, Class.forName("FixtureCache"),
+                    Class.forName("WriterMemoryPool"), boolean.class);
+            newContext.setAccessible(true);
+            NEW_CONTEXT = lookup.unreflectConstructor(newContext)
+                    .asType(MethodType.methodType(Object.class, boolean.class, Object.class, Object.class, boolean.class));
+
+            Constructor<?> newMetrics = metrics.getDeclaredConstructor(String.class, boolean.class);
+            newMetrics.setAccessible(true);
+            NEW_METRICS = lookup.unreflectConstructor(newMetrics).asType(MethodType.methodType(Object.class, String.class, boolean.class));
+
+            ENCODE_FLOAT16 = lookup.unreflect(generator.getMethod("encodeFloat16ToInt", float.class));
+
+            Method hexToBytes = generator.getDeclaredMethod("hexStringToByteArray", String.class);
+            hexToBytes.setAccessible(true);
+            HEX_TO_BYTES = lookup.unreflect(hexToBytes);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Parquetify() {
+    }
+
+    /**
+     * Directory of the example definitions, relative to the module when run through Maven.
+     */
+    static Path examples() {
+        return Paths.get(System.getProperty("parquetify.examples", "src/schema-example/json"));
+    }
+
+    /**
+     * Loads an example definition and repeats its inline data until every column has {@code rows}
+     * values, so that the cost of opening and closing the writer does not dominate.
+     */
+    static JSONObject loadExample(String name, int rows) throws IOException {
+        JSONObject definition = new JSONObject(new String(Files.readAllBytes(examples().resolve(name)), StandardCharsets.UTF_8));
+        JSONArray schema = definition.getJSONArray("schema");
+        for (int i = 0; i < schema.length(); i++) {
+            JSONObject column = schema.getJSONObject(i);
+            JSONArray data = column.optJSONArray("data");
+            if (data == null || data.isEmpty()) continue;
+            JSONArray repeated = new JSONArray();
+            for (int row = 0; row < rows; row++) {
+                repeated.put(data.get(row % data.length()));
+            }
+            column.put("data", repeated);
+        }
+        definition.put("rows", rows);
+        definition.getJSONObject("options").remove("partitions");
+        return definition;
+    }
+
+    /**
+     * Writes the definition to {@code directory} and parses it the way the command line does.
+     */
+    static Object prepare(JSONObject definition, Path directory) throws Throwable {
+        Path file = directory.resolve("definition.json");
+        Files.write(file, definition.toString().getBytes(StandardCharsets.UTF_8));
+        return (Object) READ_DEFINITION.invokeExact(file);
+    }
+
+    /**
+     * State shared by the writes of a benchmark, as one run of the command line shares it: a pre-loaded
+     * Hadoop configuration, without cache, memory budget or verification.
+     */
+    static Object newContext() throws Throwable {
+        return (Object) NEW_CONTEXT.invokeExact(false, (Object) null, (Object) null, false);
+    }
+
+    static long generate(Object definition, Path output, Object context) throws Throwable {
+        Object metrics = (Object) NEW_METRICS.invokeExact("benchmark", false);
+        return (long) GENERATE_PARQUET.invokeExact(definition, output.toString(), context, 0, metrics);
+    }
+
+    /**
+     * The generator reports progress on stdout; keep it out of the benchmark output.
+     */
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.altinity.parquet.regression.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-value conversions used when writing FLOAT16 and UUID columns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueEncodingBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private final float[] floats = new float[VALUES];
+    private final String[] uuids = new String[VALUES];
+    private int index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            floats[i] = (float) (random.nextGaussian() * 1000);
+            uuids[i] = UUID.randomUUID().toString().replace("-", "");
+        }
+    }
+
+    @Benchmark
+    public int encodeFloat16() throws Throwable {
+        return (int) Parquetify.ENCODE_FLOAT16.invokeExact(floats[index++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public byte[] hexStringToByteArray() throws Throwable {
+        return (byte[]) Parquetify.HEX_TO_BYTES.invokeExact(uuids[index++ & (VALUES - 1)]);
+    }
+}
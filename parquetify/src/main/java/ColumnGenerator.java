@@ -0,0 +1,424 @@
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Synthetic values for a primitive column, described by the {@code generator} block of a field.
+ * <p>
+ * Every value is a pure function of the seed and the row number, so the output is reproducible
+ * and any row can be produced without generating the preceding ones.
+ */
+final class ColumnGenerator implements ColumnValues {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private static final int NULL_STREAM = 1;
+    private static final int VALUE_STREAM = 2;
+
+    private enum Distribution {
+        SEQUENCE, UNIFORM, ZIPF
+    }
+
+    private enum Kind {
+        INT32, INT64, FLOAT, DOUBLE, BOOLEAN, STRING, BYTES, DECIMAL_BYTES
+    }
+
+    private final String name;
+    private final Distribution distribution;
+    private final Kind kind;
+    private final long seed;
+    private final double nullRatio;
+
+    // Integer domain of the generated keys; for floating point columns min/max/step are used as doubles
+    private final long start;
+    private final long step;
+    private final long min;
+    private final long max;
+    private final double minDouble;
+    private final double maxDouble;
+    private final long cardinality;
+
+    private final int minLength;
+    private final int maxLength;
+    private final int fixedLength;
+
+    private final ZipfSampler zipf;
+
+    private long row;
+    private long current;
+
+    ColumnGenerator(JSONObject field, long defaultSeed) {
+        JSONObject spec = field.getJSONObject("generator");
+        this.name = field.getString("name");
+
+        String physicalType = field.optString("physicalType", null);
+        if (physicalType == null) {
+            throw new IllegalArgumentException("Generators are only supported for primitive columns: " + name);
+        }
+        String logicalType = field.optString("logicalType", "NONE").toUpperCase();
+        this.kind = kindOf(physicalType, logicalType);
+        this.fixedLength = field.optInt("length", 0);
+
+        this.distribution = parseDistribution(spec.optString("type", "sequence"));
+        this.seed = spec.has("seed") ? spec.getLong("seed") : mix(defaultSeed + GOLDEN_GAMMA * name.hashCode());
+        this.nullRatio = spec.optDouble("nullRatio", 0);
+        if (nullRatio < 0 || nullRatio > 1) {
+            throw new IllegalArgumentException("nullRatio must be between 0 and 1 for column: " + name);
+        }
+        if (nullRatio > 0 && "required".equals(field.optString("schemaType"))) {
+            throw new IllegalArgumentException("nullRatio can not be used with required column: " + name);
+        }
+
+        this.start = toLong(spec.opt("start"), logicalType, 0);
+        this.step = spec.optLong("step", 1);
+        this.min = toLong(spec.opt("min"), logicalType, 0);
+        this.max = toLong(spec.opt("max"), logicalType, kind == Kind.INT32 ? Integer.MAX_VALUE : Long.MAX_VALUE);
+        this.minDouble = spec.optDouble("min", 0);
+        this.maxDouble = spec.optDouble("max", 1);
+        if (max < min || maxDouble < minDouble) {
+            throw new IllegalArgumentException("Generator max is lower than min for column: " + name);
+        }
+        this.cardinality = spec.optLong("cardinality", 0);
+        if (cardinality < 0) {
+            throw new IllegalArgumentException("cardinality must be positive for column: " + name);
+        }
+
+        this.minLength = spec.optInt("minLength", spec.optInt("length", 8));
+        this.maxLength = spec.optInt("maxLength", Math.max(minLength, spec.optInt("length", 8)));
+        if (minLength < 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid string length range for column: " + name);
+        }
+
+        if (distribution == Distribution.ZIPF) {
+            long elements = cardinality > 0 ? cardinality : (spec.has("max") ? max - min + 1 : 1000);
+            this.zipf = new ZipfSampler(elements, spec.optDouble("exponent", 1.0));
+        } else {
+            this.zipf = null;
+        }
+    }
+
+    @Override
+    public Object next() {
+        return valueAt(row++);
+    }
+
+    @Override
+    public void skip(long rows) {
+        row += rows;
+    }
+
+    /**
+     * Moves to the next row without materializing its value, which is then read with
+     * {@link #longValue()}, {@link #doubleValue()} or {@link #booleanValue()}. Returns {@code false}
+     * when the value of the row is null.
+     */
+    boolean advance() {
+        current = row++;
+        return !isNull(current);
+    }
+
+    /**
+     * Whether the values of this generator are numbers or booleans that can be read without boxing.
+     */
+    boolean isPrimitive() {
+        return kind == Kind.INT32 || kind == Kind.INT64 || kind == Kind.FLOAT || kind == Kind.DOUBLE || kind == Kind.BOOLEAN;
+    }
+
+    long longValue() {
+        return key(current);
+    }
+
+    double doubleValue() {
+        return doubleValue(current, key(current));
+    }
+
+    boolean booleanValue() {
+        return (key(current) & 1) == 1;
+    }
+
+    /**
+     * Returns the value of the given row.
+     */
+    Object valueAt(long rowIndex) {
+        if (isNull(rowIndex)) {
+            return null;
+        }
+
+        long key = key(rowIndex);
+        switch (kind) {
+            case INT32:
+                return (int) key;
+            case INT64:
+                return key;
+            case FLOAT:
+                return (float) doubleValue(rowIndex, key);
+            case DOUBLE:
+                return doubleValue(rowIndex, key);
+            case BOOLEAN:
+                return (key & 1) == 1;
+            case STRING:
+                return randomString(key);
+            case DECIMAL_BYTES:
+                return fixedLength > 0 ? toFixedLength(BigInteger.valueOf(key).toByteArray()) : BigDecimal.valueOf(key);
+            case BYTES:
+            default:
+                return randomBytes(key);
+        }
+    }
+
+    private boolean isNull(long rowIndex) {
+        return nullRatio > 0 && unitDouble(random(rowIndex, NULL_STREAM)) < nullRatio;
+    }
+
+    /**
+     * Integer key of a row: the value itself for integral columns, or the identity of the value for
+     * strings and byte arrays.
+     */
+    private long key(long rowIndex) {
+        switch (distribution) {
+            case SEQUENCE:
+                long position = cardinality > 0 ? rowIndex % cardinality : rowIndex;
+                return start + position * step;
+            case ZIPF:
+                return min + zipf.sample(rowIndex) - 1;
+            case UNIFORM:
+            default:
+                long bits = random(rowIndex, VALUE_STREAM);
+                if (cardinality > 0) {
+                    long index = Long.remainderUnsigned(bits, cardinality);
+                    return isFloatingPoint() || kind == Kind.STRING || kind == Kind.BYTES ? index : min + index;
+                }
+                if (kind == Kind.STRING || kind == Kind.BYTES) {
+                    return bits;
+                }
+                long range = max - min + 1;
+                return range <= 0 ? min + bits : min + Long.remainderUnsigned(bits, range);
+        }
+    }
+
+    private double doubleValue(long rowIndex, long key) {
+        switch (distribution) {
+            case UNIFORM:
+                double fraction = cardinality > 0 ? (double) key / cardinality : unitDouble(random(rowIndex, VALUE_STREAM));
+                return minDouble + fraction * (maxDouble - minDouble);
+            case ZIPF:
+                return minDouble + (key - min);
+            case SEQUENCE:
+            default:
+                return (double) key;
+        }
+    }
+
+    private boolean isFloatingPoint() {
+        return kind == Kind.FLOAT || kind == Kind.DOUBLE;
+    }
+
+    private String randomString(long key) {
+        long bits = mix(seed ^ mix(key));
+        int length = minLength + (int) Long.remainderUnsigned(bits, maxLength - minLength + 1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            bits = mix(bits + GOLDEN_GAMMA);
+            chars[i] = ALPHABET.charAt((int) Long.remainderUnsigned(bits, ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    private byte[] randomBytes(long key) {
+        int length = fixedLength > 0 ? fixedLength : maxLength;
+        byte[] bytes = new byte[length];
+        long bits = mix(seed ^ mix(key));
+        for (int i = 0; i < length; i++) {
+            if ((i & 7) == 0) {
+                bits = mix(bits + GOLDEN_GAMMA);
+            }
+            bytes[i] = (byte) (bits >>> ((i & 7) * 8));
+        }
+        return bytes;
+    }
+
+    // Sign-extends a big-endian two's complement value to the FIXED_LEN_BYTE_ARRAY length
+    private byte[] toFixedLength(byte[] unscaled) {
+        if (unscaled.length > fixedLength) {
+            throw new IllegalArgumentException("Generated decimal does not fit in " + fixedLength + " bytes for column: " + name);
+        }
+        byte[] bytes = new byte[fixedLength];
+        byte padding = (byte) (unscaled[0] < 0 ? -1 : 0);
+        int offset = fixedLength - unscaled.length;
+        for (int i = 0; i < offset; i++) {
+            bytes[i] = padding;
+        }
+        System.arraycopy(unscaled, 0, bytes, offset, unscaled.length);
+        return bytes;
+    }
+
+    private long random(long rowIndex, int stream) {
+        return mix(seed ^ mix(rowIndex * GOLDEN_GAMMA + stream));
+    }
+
+    /**
+     * splitmix64 finalizer, also used to hash row indexes into partitions.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double unitDouble(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    private static Distribution parseDistribution(String type) {
+        switch (type.toLowerCase()) {
+            case "sequence":
+                return Distribution.SEQUENCE;
+            case "uniform":
+            case "random":
+                return Distribution.UNIFORM;
+            case "zipf":
+                return Distribution.ZIPF;
+            default:
+                throw new IllegalArgumentException("Unsupported generator type: " + type);
+        }
+    }
+
+    private static Kind kindOf(String physicalType, String logicalType) {
+        switch (physicalType) {
+            case "INT32":
+                return Kind.INT32;
+            case "INT64":
+                return Kind.INT64;
+            case "FLOAT":
+                return Kind.FLOAT;
+            case "DOUBLE":
+                return Kind.DOUBLE;
+            case "BOOLEAN":
+                return Kind.BOOLEAN;
+            case "BINARY":
+                if (logicalType.equals("DECIMAL")) return Kind.DECIMAL_BYTES;
+                return logicalType.equals("NONE") || logicalType.equals("BSON") ? Kind.BYTES : Kind.STRING;
+            case "FIXED_LEN_BYTE_ARRAY":
+                if (logicalType.equals("FLOAT16")) return Kind.FLOAT;
+                if (logicalType.equals("DECIMAL")) return Kind.DECIMAL_BYTES;
+                return Kind.BYTES;
+            default:
+                throw new IllegalArgumentException("Unsupported physical type for generator: " + physicalType);
+        }
+    }
+
+    /**
+     * Converts a generator bound to the integer domain of the column. Dates, times and timestamps
+     * may be given as ISO-8601 strings and are converted to the unit of the logical type.
+     */
+    private long toLong(Object bound, String logicalType, long defaultValue) {
+        if (bound == null) {
+            return defaultValue;
+        }
+        if (bound instanceof Number) {
+            return ((Number) bound).longValue();
+        }
+        String text = bound.toString();
+        try {
+            switch (logicalType) {
+                case "DATE":
+                    return LocalDate.parse(text).toEpochDay();
+                case "TIME":
+                case "TIME_MILLIS":
+                    return LocalTime.parse(text).toNanoOfDay() / 1_000_000;
+                case "TIME_MICROS":
+                    return LocalTime.parse(text).toNanoOfDay() / 1_000;
+                case "TIMESTAMP":
+                case "TIMESTAMP_MILLIS":
+                    return parseInstant(text).toEpochMilli();
+                case "TIMESTAMP_MICROS":
+                    return ChronoUnit.MICROS.between(Instant.EPOCH, parseInstant(text));
+                default:
+                    return Long.parseLong(text);
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid generator bound '" + text + "' for column: " + name, e);
+        }
+    }
+
+    private static Instant parseInstant(String text) {
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    /**
+     * Zipf distributed ranks in {@code [1, elements]} using rejection-inversion sampling
+     * (Hörmann and Derflinger), which needs no tables and works for any number of elements.
+     */
+    private final class ZipfSampler {
+        private final long elements;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralElements;
+        private final double s;
+
+        ZipfSampler(long elements, double exponent) {
+            if (elements <= 0 || exponent <= 0) {
+                throw new IllegalArgumentException("Zipf generator needs a positive cardinality and exponent for column: " + name);
+            }
+            this.elements = elements;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralElements = hIntegral(elements + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        long sample(long rowIndex) {
+            for (int attempt = 0; ; attempt++) {
+                double u = hIntegralElements + unitDouble(random(rowIndex, VALUE_STREAM + attempt)) * (hIntegralX1 - hIntegralElements);
+                double x = hIntegralInverse(u);
+                long k = (long) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > elements) {
+                    k = elements;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1 - exponent);
+            if (t < -1) {
+                t = -1;
+            }
+            return Math.exp(helper1(t) * x);
+        }
+
+        private double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        private double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1.0 / 3) * (1 + 0.25 * x));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Produces the values of each column in batches on a worker pool, ahead of the thread that encodes
+ * and compresses them. Batches of one column are chained, so its source is still read sequentially
+ * and the written values, and therefore the file, are the same as without prefetching.
+ */
+final class ColumnPrefetcher {
+
+    private static final int BATCH_ROWS = 1024;
+    private static final int BATCHES_AHEAD = 4;
+
+    private ColumnPrefetcher() {
+    }
+
+    /**
+     * Wraps every non-null source so that its next {@code rows} values are produced on {@code pool}.
+     * Generators of numbers and booleans are left as they are: {@link WritePlan} reads their values
+     * without boxing, which is cheaper than handing boxed values over from another thread.
+     */
+    static ColumnValues[] wrap(ColumnValues[] columns, long rows, ExecutorService pool) {
+        ColumnValues[] prefetched = new ColumnValues[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] instanceof ColumnGenerator && ((ColumnGenerator) columns[i]).isPrimitive()) {
+                prefetched[i] = columns[i];
+            } else if (columns[i] != null) {
+                prefetched[i] = new PrefetchedColumn(columns[i], rows, pool);
+            }
+        }
+        return prefetched;
+    }
+
+    private static final class PrefetchedColumn implements ColumnValues {
+        private final ColumnValues source;
+        private final ExecutorService pool;
+        private final ArrayDeque<CompletableFuture<Object[]>> batches = new ArrayDeque<>();
+        private long remaining;
+        private Object[] batch = new Object[0];
+        private int position;
+        private volatile boolean closed;
+
+        PrefetchedColumn(ColumnValues source, long rows, ExecutorService pool) {
+            this.source = source;
+            this.pool = pool;
+            this.remaining = rows;
+            for (int i = 0; i < BATCHES_AHEAD; i++) {
+                schedule();
+            }
+        }
+
+        @Override
+        public Object next() throws IOException {
+            if (position == batch.length) {
+                batch = take();
+                position = 0;
+                schedule();
+            }
+            return batch[position++];
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Batches still queued see the flag and return nothing; the one being produced holds the lock
+            closed = true;
+            batches.clear();
+            synchronized (source) {
+                source.close();
+            }
+        }
+
+        private void schedule() {
+            if (remaining == 0) return;
+            int size = (int) Math.min(BATCH_ROWS, remaining);
+            remaining -= size;
+            CompletableFuture<Object[]> previous = batches.peekLast();
+            CompletableFuture<Object[]> produced = previous == null
+                    ? CompletableFuture.supplyAsync(() -> produce(size), pool)
+                    : previous.thenApplyAsync(ignored -> produce(size), pool);
+            batches.addLast(produced);
+        }
+
+        private Object[] produce(int size) {
+            synchronized (source) {
+                if (closed) return null;
+                Object[] values = new Object[size];
+                try {
+                    for (int i = 0; i < size; i++) {
+                        values[i] = source.next();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return values;
+            }
+        }
+
+        private Object[] take() throws IOException {
+            CompletableFuture<Object[]> next = batches.pollFirst();
+            if (next == null) {
+                throw new IllegalStateException("Read past the prefetched rows");
+            }
+            try {
+                return next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for column values");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+    }
+}
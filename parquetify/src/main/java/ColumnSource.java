@@ -0,0 +1,789 @@
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A file outside the definition holding the values of one or more top-level columns, configured
+ * with a {@code source} object: CSV, newline-delimited JSON or raw little-endian primitives.
+ * <p>
+ * Like inline data, every column has its own cursor, so columns can be read on different threads and
+ * skipped independently for partitions. The columns of a CSV or NDJSON file opened together share one
+ * reader, so the file is tokenized once however many columns it feeds: each record is decoded once,
+ * keeping only the cells of the columns read (all the keys of an NDJSON line), and held until every
+ * cursor is past it. Binary files hold one column and are read directly. Files are read through
+ * memory-mapped windows and values are decoded straight from the mapped bytes.
+ */
+abstract class ColumnSource {
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    final Path path;
+
+    private ColumnSource(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Creates the source described by {@code spec}, resolving a relative {@code path} against
+     * {@code baseDirectory} when it is not null.
+     */
+    static ColumnSource create(JSONObject spec, Path baseDirectory) {
+        Path path = Paths.get(spec.getString("path"));
+        if (!path.isAbsolute() && baseDirectory != null) {
+            path = baseDirectory.resolve(path);
+        }
+        String format = spec.optString("format", "csv").toLowerCase();
+        switch (format) {
+            case "csv":
+                String delimiter = spec.optString("delimiter", ",");
+                if (delimiter.length() != 1) {
+                    throw new IllegalArgumentException("CSV delimiter must be a single character: " + delimiter);
+                }
+                return new CsvSource(path, (byte) delimiter.charAt(0), spec.optBoolean("header", true), spec.optString("nullValue", ""));
+            case "ndjson":
+                return new NdjsonSource(path);
+            case "binary":
+                return new BinarySource(path);
+            default:
+                throw new IllegalArgumentException("Invalid source format: " + format);
+        }
+    }
+
+    /**
+     * Number of values of {@code field} in the file.
+     */
+    abstract long rows(JSONObject field) throws IOException;
+
+    /**
+     * Feeds the content of the file to {@code digest}.
+     */
+    void digest(MessageDigest digest) throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            in.digest(digest);
+        }
+    }
+
+    /**
+     * Opens a cursor over the values of {@code column}, a name or an index, converted for the
+     * top-level schema {@code field}.
+     */
+    abstract ColumnValues open(JSONObject field, Object column) throws IOException;
+
+    /**
+     * Opens one cursor for each of {@code columns}, to be read together row by row. By default every
+     * cursor reads the file on its own.
+     */
+    ColumnValues[] open(JSONObject[] fields, Object[] columns) throws IOException {
+        ColumnValues[] cursors = new ColumnValues[columns.length];
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                cursors[i] = open(fields[i], columns[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ColumnValues cursor : cursors) {
+                if (cursor == null) continue;
+                try {
+                    cursor.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    /**
+     * Converts the text of a cell to the value inline data would hold for the field: nested and
+     * repeated fields are parsed as JSON, numbers and booleans by their physical type, and binary
+     * fields are kept as strings.
+     */
+    private static Object convert(JSONObject field, String text) {
+        String schemaType = field.optString("schemaType", "");
+        if (schemaType.endsWith("Group") || schemaType.equals("repeated")) {
+            return new JSONTokener(text).nextValue();
+        }
+        switch (field.optString("physicalType", "BINARY")) {
+            case "INT32":
+                return Integer.parseInt(text.trim());
+            case "INT64":
+                return Long.parseLong(text.trim());
+            case "FLOAT":
+            case "DOUBLE":
+                return Double.parseDouble(text.trim());
+            case "BOOLEAN":
+                return Boolean.parseBoolean(text.trim());
+            case "FIXED_LEN_BYTE_ARRAY":
+                return "FLOAT16".equals(field.optString("logicalType")) ? Double.parseDouble(text.trim()) : text;
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * A source whose rows are the records of a text file, the same for all of its columns, so they
+     * are counted once.
+     */
+    private abstract static class TextSource extends ColumnSource {
+        private long rows = -1;
+
+        TextSource(Path path) {
+            super(path);
+        }
+
+        @Override
+        synchronized long rows(JSONObject field) throws IOException {
+            if (rows < 0) {
+                rows = countRows();
+            }
+            return rows;
+        }
+
+        abstract long countRows() throws IOException;
+    }
+
+    private static final class CsvSource extends TextSource {
+        private final byte delimiter;
+        private final boolean header;
+        private final String nullValue;
+
+        CsvSource(Path path, byte delimiter, boolean header, String nullValue) {
+            super(path);
+            this.delimiter = delimiter;
+            this.header = header;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        long countRows() throws IOException {
+            try (CsvReader reader = new CsvReader(new MappedInput(path), delimiter)) {
+                if (header) {
+                    reader.skipRecord();
+                }
+                long count = 0;
+                while (reader.skipRecord()) {
+                    count++;
+                }
+                return count;
+            }
+        }
+
+        @Override
+        ColumnValues open(JSONObject field, Object column) throws IOException {
+            return open(new JSONObject[]{field}, new Object[]{column})[0];
+        }
+
+        /**
+         * Opens cursors sharing one reader, so that the file is tokenized once for all the columns.
+         */
+        @Override
+        ColumnValues[] open(JSONObject[] fields, Object[] columns) throws IOException {
+            CsvReader reader = new CsvReader(new MappedInput(path), delimiter);
+            try {
+                int[] indexes = indexes(reader, columns);
+                // Slot of every CSV column read in the cells kept of a record, or -1
+                int[] slots = new int[Arrays.stream(indexes).max().orElse(-1) + 1];
+                Arrays.fill(slots, -1);
+                int kept = 0;
+                for (int index : indexes) {
+                    if (slots[index] < 0) {
+                        slots[index] = kept++;
+                    }
+                }
+                int cells = kept;
+                SharedRecords<String[]> records = new SharedRecords<String[]>(columns.length) {
+                    @Override
+                    String[] read() throws IOException {
+                        String[] record = new String[cells];
+                        return reader.readCells(slots, record, nullValue) ? record : null;
+                    }
+
+                    @Override
+                    boolean skip() throws IOException {
+                        return reader.skipRecord();
+                    }
+
+                    @Override
+                    void closeInput() throws IOException {
+                        reader.close();
+                    }
+                };
+                ColumnValues[] cursors = new ColumnValues[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    int cursor = i;
+                    int slot = slots[indexes[i]];
+                    JSONObject field = fields[i];
+                    cursors[i] = new ColumnValues() {
+                        @Override
+                        public Object next() throws IOException {
+                            String text = records.next(cursor)[slot];
+                            return text == null ? JSONObject.NULL : convert(field, text);
+                        }
+
+                        @Override
+                        public void skip(long rows) throws IOException {
+                            records.skip(cursor, rows);
+                        }
+
+                        @Override
+                        public void close() throws IOException {
+                            records.close(cursor);
+                        }
+                    };
+                }
+                return cursors;
+            } catch (IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+        }
+
+        // The CSV column of every requested column, leaving the reader after the header
+        private int[] indexes(CsvReader reader, Object[] columns) throws IOException {
+            List<String> names = header ? reader.readRecord() : null;
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Object column = columns[i];
+                if (column instanceof Number) {
+                    indexes[i] = ((Number) column).intValue();
+                } else if (header) {
+                    indexes[i] = names == null ? -1 : names.indexOf(column.toString());
+                    if (indexes[i] < 0) {
+                        throw new IllegalArgumentException("Column " + column + " is not in the header of " + path);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Columns of " + path + " without a header must be given by index, not " + column);
+                }
+            }
+            return indexes;
+        }
+    }
+
+    /**
+     * RFC 4180 records: quoted cells may contain delimiters, line breaks and doubled quotes. Blank
+     * lines are ignored.
+     */
+    private static final class CsvReader implements Closeable {
+        private final MappedInput in;
+        private final byte delimiter;
+        private final ByteArray cell = new ByteArray();
+
+        CsvReader(MappedInput in, byte delimiter) {
+            this.in = in;
+            this.delimiter = delimiter;
+        }
+
+        /**
+         * Reads the next record, keeping the cell of every CSV column with a slot in {@code slots} at
+         * that slot of {@code cells}, or null when the cell is an unquoted {@code nullValue} or the
+         * record is shorter. Returns false at the end of the file.
+         */
+        boolean readCells(int[] slots, String[] cells, String nullValue) throws IOException {
+            return scanRecord(slots, cells, nullValue, null);
+        }
+
+        boolean skipRecord() throws IOException {
+            return scanRecord(null, null, null, null);
+        }
+
+        /**
+         * Reads all the cells of the next record, or returns null at the end of the file.
+         */
+        List<String> readRecord() throws IOException {
+            List<String> cells = new ArrayList<>();
+            return scanRecord(null, null, null, cells) ? cells : null;
+        }
+
+        private boolean scanRecord(int[] slots, String[] kept, String nullValue, List<String> cells) throws IOException {
+            int b = in.read();
+            while (b == '\n' || b == '\r') {
+                b = in.read();
+            }
+            if (b < 0) {
+                return false;
+            }
+            int column = 0;
+            while (true) {
+                int slot = slots != null && column < slots.length ? slots[column] : -1;
+                boolean keep = slot >= 0 || cells != null;
+                if (keep) {
+                    cell.clear();
+                }
+                boolean quoted = b == '"';
+                if (quoted) {
+                    while (true) {
+                        b = in.read();
+                        if (b < 0) {
+                            throw new EOFException("Unterminated quoted cell in CSV source");
+                        }
+                        if (b == '"') {
+                            b = in.read();
+                            if (b != '"') break;
+                        }
+                        if (keep) cell.add(b);
+                    }
+                }
+                while (b >= 0 && b != delimiter && b != '\n' && b != '\r') {
+                    if (keep) cell.add(b);
+                    b = in.read();
+                }
+                if (slot >= 0) {
+                    String text = cell.toUtf8();
+                    kept[slot] = !quoted && text.equals(nullValue) ? null : text;
+                }
+                if (cells != null) {
+                    cells.add(cell.toUtf8());
+                }
+                if (b != delimiter) {
+                    return true;
+                }
+                column++;
+                b = in.read();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class NdjsonSource extends TextSource {
+        NdjsonSource(Path path) {
+            super(path);
+        }
+
+        @Override
+        long countRows() throws IOException {
+            try (NdjsonReader reader = new NdjsonReader(new MappedInput(path))) {
+                long count = 0;
+                while (reader.nextLine() != null) {
+                    count++;
+                }
+                return count;
+            }
+        }
+
+        @Override
+        ColumnValues open(JSONObject field, Object column) throws IOException {
+            return open(new JSONObject[]{field}, new Object[]{column})[0];
+        }
+
+        /**
+         * Opens cursors sharing one reader, so that every line is parsed once for all the columns.
+         */
+        @Override
+        ColumnValues[] open(JSONObject[] fields, Object[] columns) throws IOException {
+            NdjsonReader reader = new NdjsonReader(new MappedInput(path));
+            SharedRecords<JSONObject> lines = new SharedRecords<JSONObject>(columns.length) {
+                @Override
+                JSONObject read() throws IOException {
+                    String line = reader.nextLine();
+                    return line == null ? null : new JSONObject(line);
+                }
+
+                @Override
+                boolean skip() throws IOException {
+                    return reader.skipLine();
+                }
+
+                @Override
+                void closeInput() throws IOException {
+                    reader.close();
+                }
+            };
+            ColumnValues[] cursors = new ColumnValues[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                int cursor = i;
+                String key = columns[i].toString();
+                cursors[i] = new ColumnValues() {
+                    @Override
+                    public Object next() throws IOException {
+                        return lines.next(cursor).opt(key);
+                    }
+
+                    @Override
+                    public void skip(long rows) throws IOException {
+                        lines.skip(cursor, rows);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        lines.close(cursor);
+                    }
+                };
+            }
+            return cursors;
+        }
+    }
+
+    /**
+     * The records of a text file shared by the cursors of several columns, which may be read on
+     * different threads. Records are kept from the row of the slowest cursor to the row of the fastest
+     * one; records no cursor reads are skipped without being decoded.
+     */
+    private abstract static class SharedRecords<T> {
+        // Next row of every cursor, Long.MAX_VALUE once closed
+        private final long[] rows;
+        private int open;
+        private Object[] records = new Object[16];
+        private int head;
+        private int size;
+        // Row of the record at head
+        private long first;
+
+        SharedRecords(int cursors) {
+            this.rows = new long[cursors];
+            this.open = cursors;
+        }
+
+        /**
+         * Decodes the next record of the file, or returns null at its end.
+         */
+        abstract T read() throws IOException;
+
+        /**
+         * Moves past the next record without decoding it. Returns false at the end of the file.
+         */
+        abstract boolean skip() throws IOException;
+
+        abstract void closeInput() throws IOException;
+
+        @SuppressWarnings("unchecked")
+        synchronized T next(int cursor) throws IOException {
+            long row = rows[cursor];
+            while (first + size <= row) {
+                T record = read();
+                if (record == null) {
+                    throw new NoSuchElementException("No more rows in the source");
+                }
+                add(record);
+            }
+            T record = (T) records[(head + (int) (row - first)) & (records.length - 1)];
+            rows[cursor] = row + 1;
+            release();
+            return record;
+        }
+
+        synchronized void skip(int cursor, long count) throws IOException {
+            rows[cursor] += count;
+            release();
+        }
+
+        synchronized void close(int cursor) throws IOException {
+            if (rows[cursor] == Long.MAX_VALUE) return;
+            rows[cursor] = Long.MAX_VALUE;
+            if (--open == 0) {
+                records = null;
+                closeInput();
+            }
+        }
+
+        private void add(T record) {
+            if (size == records.length) {
+                Object[] grown = new Object[size * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = records[(head + i) & (size - 1)];
+                }
+                records = grown;
+                head = 0;
+            }
+            records[(head + size++) & (records.length - 1)] = record;
+        }
+
+        // Drops the records every cursor is past, and skips those no cursor has reached yet
+        private void release() throws IOException {
+            long slowest = Long.MAX_VALUE;
+            for (long row : rows) {
+                slowest = Math.min(slowest, row);
+            }
+            while (size > 0 && first < slowest) {
+                records[head] = null;
+                head = (head + 1) & (records.length - 1);
+                size--;
+                first++;
+            }
+            while (size == 0 && first < slowest && slowest != Long.MAX_VALUE) {
+                if (!skip()) {
+                    throw new NoSuchElementException("No more rows in the source");
+                }
+                first++;
+            }
+        }
+    }
+
+    /**
+     * Non-blank lines of a newline-delimited JSON file.
+     */
+    private static final class NdjsonReader implements Closeable {
+        private final MappedInput in;
+        private final ByteArray line = new ByteArray();
+
+        NdjsonReader(MappedInput in) {
+            this.in = in;
+        }
+
+        String nextLine() throws IOException {
+            while (true) {
+                line.clear();
+                int b = in.read();
+                if (b < 0) {
+                    return null;
+                }
+                boolean blank = true;
+                while (b >= 0 && b != '\n') {
+                    line.add(b);
+                    blank &= b == ' ' || b == '\t' || b == '\r';
+                    b = in.read();
+                }
+                if (!blank) {
+                    return line.toUtf8();
+                }
+            }
+        }
+
+        boolean skipLine() throws IOException {
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                boolean blank = true;
+                while (b >= 0 && b != '\n') {
+                    blank &= b == ' ' || b == '\t' || b == '\r';
+                    b = in.read();
+                }
+                if (!blank) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * One column of fixed-width little-endian values, whose type is the physical type of the field.
+     */
+    private static final class BinarySource extends ColumnSource {
+        BinarySource(Path path) {
+            super(path);
+        }
+
+        /**
+         * Rows of the file for the width of the field's type.
+         */
+        @Override
+        long rows(JSONObject field) throws IOException {
+            int width = width(field);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size % width != 0) {
+                    throw new IllegalArgumentException("Size of " + path + " is not a multiple of " + width + " bytes");
+                }
+                return size / width;
+            }
+        }
+
+        @Override
+        ColumnValues open(JSONObject field, Object column) throws IOException {
+            String type = field.optString("physicalType", "");
+            int width = width(field);
+            MappedInput in = new MappedInput(path);
+            return new ColumnValues() {
+                @Override
+                public Object next() throws IOException {
+                    switch (type) {
+                        case "INT32":
+                            return (int) in.readLittleEndian(4);
+                        case "INT64":
+                            return in.readLittleEndian(8);
+                        case "FLOAT":
+                            return Float.intBitsToFloat((int) in.readLittleEndian(4));
+                        case "DOUBLE":
+                            return Double.longBitsToDouble(in.readLittleEndian(8));
+                        case "BOOLEAN":
+                            return in.readLittleEndian(1) != 0;
+                        default:
+                            return in.readBytes(width);
+                    }
+                }
+
+                @Override
+                public void skip(long rows) throws IOException {
+                    in.seek(in.position() + rows * width);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+
+        private static int width(JSONObject field) {
+            String type = field.optString("physicalType", "");
+            switch (type) {
+                case "INT32":
+                case "FLOAT":
+                    return 4;
+                case "INT64":
+                case "DOUBLE":
+                    return 8;
+                case "BOOLEAN":
+                    return 1;
+                case "FIXED_LEN_BYTE_ARRAY":
+                    if (!"FLOAT16".equals(field.optString("logicalType"))) {
+                        return field.getInt("length");
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new IllegalArgumentException("Binary sources can not hold " + type + " field " + field.optString("name"));
+        }
+    }
+
+    /**
+     * Sequential reader over a file mapped one window at a time.
+     */
+    private static final class MappedInput implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedInput(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                this.size = channel.size();
+                map(0);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int read() throws IOException {
+            if (!window.hasRemaining()) {
+                long next = windowStart + window.limit();
+                if (next >= size) {
+                    return -1;
+                }
+                map(next);
+            }
+            return window.get() & 0xff;
+        }
+
+        long readLittleEndian(int width) throws IOException {
+            if (window.remaining() >= width) {
+                switch (width) {
+                    case 8:
+                        return window.getLong();
+                    case 4:
+                        return window.getInt();
+                    default:
+                        break;
+                }
+            }
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                int b = read();
+                if (b < 0) {
+                    throw new EOFException("Truncated value in binary source");
+                }
+                value |= (long) b << (8 * i);
+            }
+            return value;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                int b = read();
+                if (b < 0) {
+                    throw new EOFException("Truncated value in binary source");
+                }
+                bytes[i] = (byte) b;
+            }
+            return bytes;
+        }
+
+        long position() {
+            return windowStart + window.position();
+        }
+
+        /**
+         * Moves to {@code position}, within the mapped window when it holds it, so that skipping a few
+         * rows does not map the file again.
+         */
+        void seek(long position) throws IOException {
+            position = Math.min(position, size);
+            if (position < windowStart || position >= windowStart + window.limit()) {
+                map(position - position % WINDOW_SIZE);
+            }
+            window.position((int) (position - windowStart));
+        }
+
+        void digest(MessageDigest digest) throws IOException {
+            while (true) {
+                digest.update(window);
+                long next = windowStart + window.limit();
+                if (next >= size) return;
+                map(next);
+            }
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Growable byte buffer for the cell or line being read.
+     */
+    private static final class ByteArray {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void clear() {
+            length = 0;
+        }
+
+        void add(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        String toUtf8() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential source of the values of one top-level column, consumed row by row while the file is
+ * written.
+ */
+interface ColumnValues extends Closeable {
+
+    /**
+     * Returns the value of the next row.
+     */
+    Object next() throws IOException;
+
+    /**
+     * Moves past the next {@code rows} rows without materializing their values.
+     */
+    default void skip(long rows) throws IOException {
+        for (long i = 0; i < rows; i++) {
+            next();
+        }
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,388 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.NoSuchElementException;
+
+/**
+ * A file definition read without holding the inline column data in memory.
+ * <p>
+ * The definition is scanned once with a {@link JsonPullParser}: everything except the top-level
+ * {@code schema[i].data} arrays is materialized into {@link #getConfig()}, while for each data array
+ * only its byte offset and element count are kept. Values are then pulled from the file on demand
+ * through {@link #openData(int)}, one independent cursor per column, so heap usage does not depend
+ * on the amount of inline data.
+ * <p>
+ * Definitions received in memory, such as requests of the server mode, are read the same way from
+ * their bytes.
+ * <p>
+ * Columns may instead take their values from an external file described by a {@code source} object,
+ * on the field or on the definition for every field without {@code data}, {@code generator} or a
+ * source of its own. Such columns are opened through the same {@link #openData(int)} as inline data,
+ * or all together through {@link #openData(int[])}.
+ * <p>
+ * Cursors skip inline rows by parsing them, unless {@link #indexRows()} has recorded where every
+ * value starts, in which case they seek past them.
+ */
+final class Definition {
+
+    private final Path path;
+    private final byte[] content;
+    private final JSONObject config;
+    private final long[] dataOffsets;
+    private final long[] dataEnds;
+    private final long[] dataLengths;
+    private final ColumnSource[] sources;
+    private final Object[] sourceColumns;
+    // Byte offset of every inline value by column, once indexRows() has run
+    private volatile long[][] rowOffsets;
+
+    private Definition(Path path, byte[] content, JSONObject config, long[] dataOffsets, long[] dataEnds, long[] dataLengths) {
+        this.path = path;
+        this.content = content;
+        this.config = config;
+        this.dataOffsets = dataOffsets;
+        this.dataEnds = dataEnds;
+        this.dataLengths = dataLengths;
+        this.sources = new ColumnSource[dataOffsets.length];
+        this.sourceColumns = new Object[dataOffsets.length];
+        resolveSources();
+    }
+
+    static Definition read(Path path) throws IOException {
+        return read(Files.newInputStream(path), path, null);
+    }
+
+    static Definition read(byte[] content) throws IOException {
+        return read(new ByteArrayInputStream(content), null, content);
+    }
+
+    private static Definition read(InputStream in, Path path, byte[] content) throws IOException {
+        try (JsonPullParser parser = new JsonPullParser(in)) {
+            if (parser.next() != JsonPullParser.Token.START_OBJECT) {
+                throw parser.syntaxError("A JSON object text must begin with '{'");
+            }
+
+            JSONObject config = new JSONObject();
+            List<Long> offsets = new ArrayList<>();
+            List<Long> ends = new ArrayList<>();
+            List<Long> lengths = new ArrayList<>();
+            while (parser.next() != JsonPullParser.Token.END_OBJECT) {
+                String key = parser.expect(JsonPullParser.Token.FIELD_NAME).currentName();
+                parser.next();
+                if ("schema".equals(key) && parser.currentToken() == JsonPullParser.Token.START_ARRAY) {
+                    config.put(key, readSchema(parser, offsets, ends, lengths));
+                } else {
+                    config.put(key, parser.readValue());
+                }
+            }
+
+            long[] dataOffsets = new long[offsets.size()];
+            long[] dataEnds = new long[ends.size()];
+            long[] dataLengths = new long[lengths.size()];
+            for (int i = 0; i < dataOffsets.length; i++) {
+                dataOffsets[i] = offsets.get(i);
+                dataEnds[i] = ends.get(i);
+                dataLengths[i] = lengths.get(i);
+            }
+            return new Definition(path, content, config, dataOffsets, dataEnds, dataLengths);
+        }
+    }
+
+    private static JSONArray readSchema(JsonPullParser parser, List<Long> offsets, List<Long> ends, List<Long> lengths) throws IOException {
+        JSONArray schemaArray = new JSONArray();
+        while (parser.next() != JsonPullParser.Token.END_ARRAY) {
+            if (parser.currentToken() != JsonPullParser.Token.START_OBJECT) {
+                schemaArray.put(parser.readValue());
+                offsets.add(-1L);
+                ends.add(-1L);
+                lengths.add(0L);
+                continue;
+            }
+
+            JSONObject field = new JSONObject();
+            long dataOffset = -1;
+            long dataEnd = -1;
+            long dataLength = 0;
+            while (parser.next() != JsonPullParser.Token.END_OBJECT) {
+                String key = parser.expect(JsonPullParser.Token.FIELD_NAME).currentName();
+                parser.next();
+                if ("data".equals(key) && parser.currentToken() == JsonPullParser.Token.START_ARRAY) {
+                    dataOffset = parser.tokenStart();
+                    dataLength = 0;
+                    while (parser.next() != JsonPullParser.Token.END_ARRAY) {
+                        parser.skipChildren();
+                        dataLength++;
+                    }
+                    dataEnd = parser.tokenStart() + 1;
+                } else {
+                    field.put(key, parser.readValue());
+                }
+            }
+            schemaArray.put(field);
+            offsets.add(dataOffset);
+            ends.add(dataEnd);
+            lengths.add(dataLength);
+        }
+        return schemaArray;
+    }
+
+    /**
+     * Resolves the {@code source} of every top-level field, merging the field object over the file
+     * one. Fields reading the same file with the same options share one {@link ColumnSource}, so its
+     * rows are counted once.
+     */
+    private void resolveSources() {
+        JSONObject fileSource = config.optJSONObject("source");
+        JSONArray schemaArray = getSchema();
+        Path baseDirectory = path == null ? null : path.toAbsolutePath().getParent();
+        Map<String, ColumnSource> opened = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            JSONObject field = schemaArray.optJSONObject(i);
+            if (field == null) continue;
+            JSONObject fieldSource = field.optJSONObject("source");
+            if (fieldSource == null && (fileSource == null || dataOffsets[i] >= 0 || field.has("generator"))) {
+                continue;
+            }
+            if (dataOffsets[i] >= 0 || field.has("generator")) {
+                throw new IllegalArgumentException("Field " + field.optString("name") + " has a source and data or a generator");
+            }
+
+            JSONObject spec = new JSONObject();
+            for (JSONObject layer : new JSONObject[]{fileSource, fieldSource}) {
+                if (layer == null) continue;
+                for (String key : layer.keySet()) {
+                    spec.put(key, layer.get(key));
+                }
+            }
+            if (!spec.has("path")) {
+                throw new IllegalArgumentException("Source of field " + field.optString("name") + " has no path");
+            }
+            sourceColumns[i] = spec.has("column") ? spec.remove("column") : field.getString("name");
+            String key = new TreeMap<>(spec.toMap()).toString();
+            sources[i] = opened.computeIfAbsent(key, k -> ColumnSource.create(spec, baseDirectory));
+        }
+    }
+
+    /**
+     * The definition without the inline data arrays of the top-level schema fields.
+     */
+    JSONObject getConfig() {
+        return config;
+    }
+
+    JSONArray getSchema() {
+        return config.getJSONArray("schema");
+    }
+
+    /**
+     * Whether the given top-level column has inline data or a source.
+     */
+    boolean hasData(int column) {
+        return dataOffsets[column] >= 0 || sources[column] != null;
+    }
+
+    long getDataLength(int column) throws IOException {
+        if (sources[column] != null) {
+            return sources[column].rows(getSchema().getJSONObject(column));
+        }
+        return dataLengths[column];
+    }
+
+    /**
+     * Feeds the raw bytes of every inline data array to {@code digest}, in column order, without
+     * parsing them, followed by the content of every source file.
+     */
+    void digestData(MessageDigest digest) throws IOException {
+        Set<ColumnSource> digested = new HashSet<>();
+        for (ColumnSource source : sources) {
+            if (source != null && digested.add(source)) {
+                source.digest(digest);
+            }
+        }
+        for (int column = 0; column < dataOffsets.length; column++) {
+            if (dataOffsets[column] < 0) continue;
+            if (content != null) {
+                digest.update(content, (int) dataOffsets[column], (int) (dataEnds[column] - dataOffsets[column]));
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                long position = dataOffsets[column];
+                while (position < dataEnds[column]) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), dataEnds[column] - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("Definition " + path + " changed while it was read");
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                    position += read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the byte offset of every inline value, with one pass over each data array, so that
+     * cursors opened afterwards skip rows by seeking instead of parsing them. Partitions skip the rows
+     * of each other, which would otherwise parse every row once per partition. The index takes 8
+     * bytes per inline value; data arrays too long for one Java array are not indexed.
+     */
+    synchronized void indexRows() throws IOException {
+        if (rowOffsets != null) return;
+        long[][] offsets = new long[dataOffsets.length][];
+        for (int column = 0; column < dataOffsets.length; column++) {
+            if (dataOffsets[column] < 0 || dataLengths[column] > Integer.MAX_VALUE - 8) continue;
+            long[] columnOffsets = new long[(int) dataLengths[column]];
+            try (JsonPullParser parser = openParser(column)) {
+                for (int row = 0; row < columnOffsets.length; row++) {
+                    parser.next();
+                    columnOffsets[row] = parser.tokenStart();
+                    parser.skipChildren();
+                }
+            }
+            offsets[column] = columnOffsets;
+        }
+        rowOffsets = offsets;
+    }
+
+    /**
+     * Opens a cursor over the inline data or the source of the given top-level column.
+     */
+    ColumnValues openData(int column) throws IOException {
+        if (sources[column] != null) {
+            return sources[column].open(getSchema().getJSONObject(column), sourceColumns[column]);
+        }
+        if (!hasData(column)) {
+            throw new IllegalArgumentException("Column " + column + " has no inline data");
+        }
+        long[][] offsets = rowOffsets;
+        return new InlineData(openParser(column), offsets != null ? offsets[column] : null);
+    }
+
+    /**
+     * Opens cursors over several top-level columns, in the given order, to be read together row by
+     * row. Columns of the same source share what can be shared, such as the parsed lines of an NDJSON
+     * file.
+     */
+    ColumnValues[] openData(int[] columns) throws IOException {
+        ColumnValues[] cursors = new ColumnValues[columns.length];
+        try {
+            Map<ColumnSource, List<Integer>> bySource = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                ColumnSource source = sources[columns[i]];
+                if (source != null) {
+                    bySource.computeIfAbsent(source, s -> new ArrayList<>()).add(i);
+                } else {
+                    cursors[i] = openData(columns[i]);
+                }
+            }
+            for (Map.Entry<ColumnSource, List<Integer>> entry : bySource.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                JSONObject[] fields = new JSONObject[indexes.size()];
+                Object[] names = new Object[indexes.size()];
+                for (int k = 0; k < fields.length; k++) {
+                    fields[k] = getSchema().getJSONObject(columns[indexes.get(k)]);
+                    names[k] = sourceColumns[columns[indexes.get(k)]];
+                }
+                ColumnValues[] opened = entry.getKey().open(fields, names);
+                for (int k = 0; k < opened.length; k++) {
+                    cursors[indexes.get(k)] = opened[k];
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ColumnValues cursor : cursors) {
+                if (cursor == null) continue;
+                try {
+                    cursor.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    // A parser on the start of the data array of the column
+    private JsonPullParser openParser(int column) throws IOException {
+        if (content != null) {
+            int offset = (int) dataOffsets[column];
+            JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(content, offset, content.length - offset), offset);
+            parser.next();
+            return parser;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            channel.position(dataOffsets[column]);
+            InputStream in = Channels.newInputStream(channel);
+            JsonPullParser parser = new JsonPullParser(in, dataOffsets[column]);
+            parser.next();
+            return parser;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static final class InlineData implements ColumnValues {
+        private final JsonPullParser parser;
+        private final long[] rowOffsets;
+        private long row;
+
+        InlineData(JsonPullParser parser, long[] rowOffsets) {
+            this.parser = parser;
+            this.rowOffsets = rowOffsets;
+        }
+
+        @Override
+        public Object next() throws IOException {
+            if (parser.next() == JsonPullParser.Token.END_ARRAY) {
+                throw new NoSuchElementException("No more inline values");
+            }
+            row++;
+            return parser.readValue();
+        }
+
+        @Override
+        public void skip(long rows) throws IOException {
+            if (rowOffsets != null && rows > 0 && row + rows < rowOffsets.length) {
+                row += rows;
+                parser.skipTo(rowOffsets[(int) row]);
+                return;
+            }
+            for (long i = 0; i < rows; i++) {
+                if (parser.next() == JsonPullParser.Token.END_ARRAY) {
+                    throw new NoSuchElementException("No more inline values");
+                }
+                parser.skipChildren();
+                row++;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the {@code --json} argument into the list of definition files to generate.
+ * <p>
+ * The argument can be a single {@code .json} file, a directory (all {@code *.json} files in it),
+ * a glob such as {@code fixtures/**.json}, or a manifest: any other file, listing one definition,
+ * directory or glob per line. Blank lines and lines starting with {@code #} are ignored and
+ * relative entries are resolved against the directory of the manifest.
+ */
+final class DefinitionFiles {
+
+    private DefinitionFiles() {
+    }
+
+    static List<Path> resolve(String argument) throws IOException {
+        Path path = Paths.get(argument);
+        if (!isGlob(argument) && Files.isRegularFile(path) && !isDefinition(path)) {
+            return readManifest(path);
+        }
+        return resolveEntry(argument);
+    }
+
+    private static List<Path> resolveEntry(String entry) throws IOException {
+        if (isGlob(entry)) {
+            return glob(entry);
+        }
+        Path path = Paths.get(entry);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                List<Path> definitions = files.filter(Files::isRegularFile)
+                        .filter(DefinitionFiles::isDefinition)
+                        .sorted()
+                        .collect(Collectors.toList());
+                if (definitions.isEmpty()) {
+                    throw new NoSuchFileException(entry, null, "No JSON definitions found in directory");
+                }
+                return definitions;
+            }
+        }
+        List<Path> definitions = new ArrayList<>();
+        definitions.add(path);
+        return definitions;
+    }
+
+    private static List<Path> readManifest(Path manifest) throws IOException {
+        Path baseDir = manifest.toAbsolutePath().getParent();
+        List<Path> definitions = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String entry = line.trim();
+            if (entry.isEmpty() || entry.startsWith("#")) continue;
+            if (!Paths.get(entry).isAbsolute()) {
+                entry = baseDir.resolve(entry).toString();
+            }
+            definitions.addAll(resolveEntry(entry));
+        }
+        if (definitions.isEmpty()) {
+            throw new NoSuchFileException(manifest.toString(), null, "Manifest does not list any definitions");
+        }
+        return definitions;
+    }
+
+    private static List<Path> glob(String pattern) throws IOException {
+        // Walk from the deepest directory that does not contain glob characters
+        int firstGlob = firstGlobIndex(pattern);
+        int lastSeparator = pattern.lastIndexOf('/', firstGlob);
+        Path baseDir = Paths.get(lastSeparator < 0 ? "." : (lastSeparator == 0 ? "/" : pattern.substring(0, lastSeparator)));
+        String normalized = lastSeparator < 0 ? baseDir.resolve(pattern).toString() : pattern;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized);
+
+        if (!Files.isDirectory(baseDir)) {
+            throw new NoSuchFileException(pattern, null, "No definitions match the pattern");
+        }
+        try (Stream<Path> files = Files.walk(baseDir)) {
+            List<Path> definitions = files.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (definitions.isEmpty()) {
+                throw new NoSuchFileException(pattern, null, "No definitions match the pattern");
+            }
+            return definitions;
+        }
+    }
+
+    private static boolean isDefinition(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+
+    private static boolean isGlob(String argument) {
+        return firstGlobIndex(argument) < argument.length();
+    }
+
+    private static int firstGlobIndex(String argument) {
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return argument.length();
+    }
+}
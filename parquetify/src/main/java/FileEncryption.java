@@ -0,0 +1,257 @@
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.crypto.AesMode;
+import org.apache.parquet.crypto.ColumnDecryptionProperties;
+import org.apache.parquet.crypto.ColumnEncryptionProperties;
+import org.apache.parquet.crypto.FileDecryptionProperties;
+import org.apache.parquet.crypto.FileEncryptionProperties;
+import org.apache.parquet.crypto.ModuleCipherFactory;
+import org.apache.parquet.crypto.ParquetCipher;
+import org.apache.parquet.format.BlockCipher;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.io.InputFile;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code encryption} options of a definition: the footer key, the cipher, whether the footer is
+ * left in plaintext, and the columns to encrypt, each with the footer key or a key of its own.
+ * <p>
+ * Besides the properties to write the file and read it back, it estimates how long the cipher of every
+ * encrypted column chunk takes, for the write metrics. parquet-java encrypts the pages inside its file
+ * writer without a hook around it, so once the file is written, modules of the size of the pages of
+ * every chunk listed in its offset index are encrypted again with the key and cipher of the column, and
+ * timed. This is a re-encryption estimate, not the time the write itself spent in the cipher.
+ */
+final class FileEncryption {
+
+    // Typical size of a serialized page header, always encrypted with AES-GCM. The page sizes of the
+    // offset index include the encrypted header and the overhead of both modules.
+    private static final int PAGE_HEADER_SIZE = 32;
+    // Length, nonce and tag a module adds to its plaintext; CTR modules have no tag
+    private static final int GCM_MODULE_OVERHEAD = 4 + 12 + 16;
+    private static final int CTR_MODULE_OVERHEAD = 4 + 12;
+    private static final int WARM_UP_MODULES = 256;
+    private static final int WARM_UP_MODULE_SIZE = 64 * 1024;
+    private static final byte[] AAD = new byte[24];
+    private static boolean warm;
+
+    private final byte[] footerKey;
+    private final ParquetCipher algorithm;
+    private final boolean plaintextFooter;
+    private final byte[] aadPrefix;
+    private final boolean storeAadPrefix;
+    private final byte[] footerKeyMetadata;
+    // Encrypted columns with their own key, or null for the footer key; empty when every column is
+    // encrypted with the footer key
+    private final Map<ColumnPath, byte[]> columnKeys = new LinkedHashMap<>();
+    private final Map<ColumnPath, byte[]> columnKeyMetadata = new HashMap<>();
+
+    private FileEncryption(JSONObject options) {
+        this.footerKey = key(options, "footerKey");
+        String algorithmName = options.optString("algorithm", ParquetCipher.AES_GCM_V1.name());
+        try {
+            this.algorithm = ParquetCipher.valueOf(algorithmName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown encryption algorithm: " + algorithmName + ", expected one of "
+                    + Arrays.toString(ParquetCipher.values()));
+        }
+        this.plaintextFooter = options.optBoolean("plaintextFooter", false);
+        this.aadPrefix = options.has("aadPrefix") ? key(options, "aadPrefix") : null;
+        this.storeAadPrefix = options.optBoolean("storeAadPrefixInFile", true);
+        this.footerKeyMetadata = options.has("footerKeyMetadata") ? key(options, "footerKeyMetadata") : null;
+
+        JSONArray columns = options.optJSONArray("encryptedColumns");
+        if (columns != null) {
+            for (int i = 0; i < columns.length(); i++) {
+                JSONObject column = columns.getJSONObject(i);
+                ColumnPath path = ColumnPath.fromDotString(column.getString("path"));
+                byte[] key = column.has("key") ? key(column, "key") : null;
+                if (column.has("keyMetadata")) {
+                    if (key == null) {
+                        throw new IllegalArgumentException("keyMetadata of encrypted column " + path.toDotString()
+                                + " needs a key of its own");
+                    }
+                    columnKeyMetadata.put(path, key(column, "keyMetadata"));
+                }
+                columnKeys.put(path, key);
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code encryption} block of the writer options, or returns null when there is none.
+     */
+    static FileEncryption of(JSONObject options) {
+        JSONObject encryption = options.optJSONObject("encryption");
+        return encryption != null ? new FileEncryption(encryption) : null;
+    }
+
+    ParquetCipher getAlgorithm() {
+        return algorithm;
+    }
+
+    boolean isPlaintextFooter() {
+        return plaintextFooter;
+    }
+
+    FileEncryptionProperties encryptionProperties() {
+        FileEncryptionProperties.Builder builder = FileEncryptionProperties.builder(footerKey)
+                .withAlgorithm(algorithm);
+        if (plaintextFooter) {
+            builder.withPlaintextFooter();
+        }
+        if (aadPrefix != null) {
+            builder.withAADPrefix(aadPrefix);
+            if (!storeAadPrefix) {
+                builder.withoutAADPrefixStorage();
+            }
+        }
+        if (footerKeyMetadata != null) {
+            builder.withFooterKeyMetadata(footerKeyMetadata);
+        }
+        if (!columnKeys.isEmpty()) {
+            Map<ColumnPath, ColumnEncryptionProperties> columns = new HashMap<>();
+            for (Map.Entry<ColumnPath, byte[]> entry : columnKeys.entrySet()) {
+                ColumnPath path = entry.getKey();
+                ColumnEncryptionProperties.Builder column = ColumnEncryptionProperties.builder(path, true);
+                if (entry.getValue() != null) {
+                    column.withKey(entry.getValue());
+                    if (columnKeyMetadata.containsKey(path)) {
+                        column.withKeyMetaData(columnKeyMetadata.get(path));
+                    }
+                }
+                columns.put(path, column.build());
+            }
+            builder.withEncryptedColumns(columns);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Properties to read the file back with the footer key and the keys of the columns.
+     */
+    FileDecryptionProperties decryptionProperties() {
+        FileDecryptionProperties.Builder builder = FileDecryptionProperties.builder().withFooterKey(footerKey);
+        if (aadPrefix != null) {
+            builder.withAADPrefix(aadPrefix);
+        }
+        Map<ColumnPath, ColumnDecryptionProperties> columns = new HashMap<>();
+        for (Map.Entry<ColumnPath, byte[]> entry : columnKeys.entrySet()) {
+            if (entry.getValue() != null) {
+                columns.put(entry.getKey(), ColumnDecryptionProperties.builder(entry.getKey()).withKey(entry.getValue()).build());
+            }
+        }
+        if (!columns.isEmpty()) {
+            builder.withColumnKeys(columns);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Whether the column is encrypted with a key of its own, the footer key, or not at all.
+     */
+    String keyOf(ColumnPath path) {
+        if (columnKeys.isEmpty()) {
+            return "footer";
+        }
+        if (!columnKeys.containsKey(path)) {
+            return "none";
+        }
+        return columnKeys.get(path) != null ? "column" : "footer";
+    }
+
+    /**
+     * Estimates the cipher time of every encrypted column chunk of {@code file}, by row group and
+     * column, with 0 for plaintext columns. Every page is timed as one AES-GCM module for its header
+     * and one module of the size of its data with the cipher of the page data (AES-CTR with
+     * {@code AES_GCM_CTR_V1}).
+     */
+    long[][] timeColumnCiphers(InputFile file, ParquetReadOptions options) throws IOException {
+        warmUp();
+        AesMode dataMode = algorithm == ParquetCipher.AES_GCM_CTR_V1 ? AesMode.CTR : AesMode.GCM;
+        byte[] header = new byte[PAGE_HEADER_SIZE];
+        try (ParquetFileReader reader = new ParquetFileReader(file, options)) {
+            List<BlockMetaData> blocks = reader.getRowGroups();
+            long[][] nanos = new long[blocks.size()][];
+            for (int b = 0; b < blocks.size(); b++) {
+                List<ColumnChunkMetaData> chunks = blocks.get(b).getColumns();
+                nanos[b] = new long[chunks.size()];
+                for (int c = 0; c < chunks.size(); c++) {
+                    ColumnChunkMetaData chunk = chunks.get(c);
+                    String key = keyOf(chunk.getPath());
+                    if ("none".equals(key)) continue;
+                    byte[] keyBytes = "column".equals(key) ? columnKeys.get(chunk.getPath()) : footerKey;
+                    int overhead = PAGE_HEADER_SIZE + GCM_MODULE_OVERHEAD
+                            + (dataMode == AesMode.CTR ? CTR_MODULE_OVERHEAD : GCM_MODULE_OVERHEAD);
+                    long[] pages = pageSizes(chunk, reader.readOffsetIndex(chunk));
+                    // parquet-java sets up the ciphers of a column once per file, so only encrypting is timed
+                    BlockCipher.Encryptor dataEncryptor = ModuleCipherFactory.getEncryptor(dataMode, keyBytes);
+                    BlockCipher.Encryptor headerEncryptor = ModuleCipherFactory.getEncryptor(AesMode.GCM, keyBytes);
+                    for (long size : pages) {
+                        byte[] page = new byte[(int) Math.max(0, size - overhead)];
+                        long start = System.nanoTime();
+                        headerEncryptor.encrypt(header, AAD);
+                        dataEncryptor.encrypt(page, AAD);
+                        nanos[b][c] += System.nanoTime() - start;
+                    }
+                }
+            }
+            return nanos;
+        }
+    }
+
+    /**
+     * Sizes of the pages of a chunk as written, encrypted header included: the dictionary page, then
+     * the data pages of its offset index. The whole chunk counts as one page when it has no offset
+     * index.
+     */
+    private static long[] pageSizes(ColumnChunkMetaData chunk, OffsetIndex offsetIndex) {
+        if (offsetIndex == null || offsetIndex.getPageCount() == 0) {
+            return new long[]{chunk.getTotalSize()};
+        }
+        long dictionary = offsetIndex.getOffset(0) - chunk.getStartingPos();
+        int first = dictionary > 0 ? 1 : 0;
+        long[] pages = new long[first + offsetIndex.getPageCount()];
+        if (dictionary > 0) {
+            pages[0] = dictionary;
+        }
+        for (int i = 0; i < offsetIndex.getPageCount(); i++) {
+            pages[first + i] = offsetIndex.getCompressedPageSize(i);
+        }
+        return pages;
+    }
+
+    /**
+     * Runs both ciphers once before the first measurement, so that it does not include loading the
+     * cipher provider and compiling the AES intrinsics.
+     */
+    private static synchronized void warmUp() {
+        if (warm) return;
+        byte[] key = new byte[16];
+        Arrays.fill(key, (byte) 1);
+        byte[] module = new byte[WARM_UP_MODULE_SIZE];
+        for (AesMode mode : AesMode.values()) {
+            BlockCipher.Encryptor encryptor = ModuleCipherFactory.getEncryptor(mode, key);
+            for (int i = 0; i < WARM_UP_MODULES; i++) {
+                encryptor.encrypt(module, AAD);
+            }
+        }
+        warm = true;
+    }
+
+    private static byte[] key(JSONObject options, String name) {
+        return options.getString(name).getBytes(StandardCharsets.UTF_8);
+    }
+}
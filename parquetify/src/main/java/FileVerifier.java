@@ -0,0 +1,510 @@
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.VersionParser;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReaderImpl;
+import org.apache.parquet.column.page.DataPage;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Reads a written file back for {@code --verify} and checks it against the rows handed to the writer:
+ * its schema and row count, the values of every leaf column, the statistics of every column chunk and
+ * the presence of every value in the bloom filter of its chunk.
+ * <p>
+ * While the file is written, the consumer returned by {@link #record(RecordConsumer)} adds every value
+ * to a digest of its leaf column, which depends on the value, its row and its position in the row.
+ * Reading back computes the same digests from the decoded column chunks. Chunks do not depend on each
+ * other, so they are decoded in parallel, one task per row group and column, with the primitive
+ * {@link ColumnReader} API instead of assembling records.
+ */
+final class FileVerifier {
+
+    private static final int MAX_FAILURES = 20;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final PrimitiveConverter IGNORED = new PrimitiveConverter() {
+    };
+
+    private final MessageType schema;
+    private final List<ColumnDescriptor> leaves;
+    private final MessageType[] projections;
+    private final Node root;
+    private final int depth;
+    private final long[] expectedValues;
+    private final long[] expectedDigests;
+    private long expectedRows;
+
+    FileVerifier(MessageType schema) {
+        this.schema = schema;
+        this.leaves = schema.getColumns();
+        this.projections = new MessageType[leaves.size()];
+        for (int i = 0; i < projections.length; i++) {
+            projections[i] = new MessageType(schema.getName(), project(schema, leaves.get(i).getPath(), 0));
+        }
+        int[] leafCount = new int[1];
+        this.root = Node.of(schema, leafCount);
+        this.depth = depth(schema);
+        this.expectedValues = new long[leaves.size()];
+        this.expectedDigests = new long[leaves.size()];
+    }
+
+    /**
+     * Wraps the record consumer of the writer to record the values written through it.
+     */
+    RecordConsumer record(RecordConsumer delegate) {
+        return new RecordingConsumer(delegate);
+    }
+
+    /**
+     * Reads {@code file} back with up to {@code threads} threads, each opening the file with its own
+     * {@code options}, and compares it with the rows recorded while it was written. Returns the number
+     * of values read, and throws an {@link IllegalStateException} listing the differences found.
+     */
+    long verify(InputFile file, Supplier<ParquetReadOptions> options, int threads) throws IOException {
+        List<String> failures = new ArrayList<>();
+        List<BlockMetaData> blocks;
+        VersionParser.ParsedVersion writerVersion;
+        try (ParquetFileReader reader = new ParquetFileReader(file, options.get())) {
+            MessageType fileSchema = reader.getFooter().getFileMetaData().getSchema();
+            if (!fileSchema.equals(schema)) {
+                throw new IllegalStateException("Verification of " + file + " failed: its schema\n" + fileSchema
+                        + "differs from the written schema\n" + schema);
+            }
+            blocks = reader.getRowGroups();
+            writerVersion = writerVersion(reader.getFooter().getFileMetaData().getCreatedBy());
+        }
+
+        long rows = 0;
+        List<long[]> tasks = new ArrayList<>();
+        for (int block = 0; block < blocks.size(); block++) {
+            for (int leaf = 0; leaf < leaves.size(); leaf++) {
+                tasks.add(new long[]{block, leaf, rows});
+            }
+            rows += blocks.get(block).getRowCount();
+        }
+        if (rows != expectedRows) {
+            failures.add("file has " + rows + " rows, " + expectedRows + " were written");
+        }
+
+        int workers = Math.max(1, Math.min(threads, tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        ChunkResults results = new ChunkResults(leaves.size());
+        try {
+            List<Future<ChunkResults>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                int worker = w;
+                futures.add(executor.submit(() -> {
+                    ChunkResults workerResults = new ChunkResults(leaves.size());
+                    try (ParquetFileReader reader = new ParquetFileReader(file, options.get())) {
+                        for (int t = worker; t < tasks.size(); t += workers) {
+                            long[] task = tasks.get(t);
+                            readChunk(reader, (int) task[0], (int) task[1], task[2], writerVersion, workerResults);
+                        }
+                    }
+                    return workerResults;
+                }));
+            }
+            for (Future<ChunkResults> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while verifying " + file);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        failures.addAll(results.failures);
+        long values = 0;
+        for (int leaf = 0; leaf < leaves.size(); leaf++) {
+            String column = String.join(".", leaves.get(leaf).getPath());
+            if (results.values[leaf] != expectedValues[leaf]) {
+                failures.add(column + ": file has " + results.values[leaf] + " values, " + expectedValues[leaf] + " were written");
+            } else if (results.digests[leaf] != expectedDigests[leaf]) {
+                failures.add(column + ": values differ from the written values");
+            }
+            values += results.values[leaf];
+        }
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder("Verification of " + file + " failed:");
+            for (String failure : failures.subList(0, Math.min(failures.size(), MAX_FAILURES))) {
+                message.append("\n    ").append(failure);
+            }
+            if (failures.size() > MAX_FAILURES) {
+                message.append("\n    ... and ").append(failures.size() - MAX_FAILURES).append(" more");
+            }
+            throw new IllegalStateException(message.toString());
+        }
+        return values;
+    }
+
+    /**
+     * Decodes the chunk of one leaf column in one row group, adding its values to the digest of the
+     * column and checking them against the statistics and bloom filter of the chunk.
+     */
+    private void readChunk(ParquetFileReader reader, int block, int leaf, long firstRow, VersionParser.ParsedVersion writerVersion,
+                           ChunkResults results) throws IOException {
+        ColumnDescriptor descriptor = leaves.get(leaf);
+        ColumnChunkMetaData chunk = reader.getRowGroups().get(block).getColumns().get(leaf);
+        String name = "row group " + block + ", column " + String.join(".", descriptor.getPath());
+        reader.setRequestedSchema(projections[leaf]);
+        PageReadStore pages = reader.readRowGroup(block);
+        CountingPageReader pageReader = new CountingPageReader(pages.getPageReader(descriptor));
+        ColumnReader column = new ColumnReaderImpl(descriptor, pageReader, IGNORED, writerVersion);
+        BloomFilter bloomFilter = reader.readBloomFilter(chunk);
+        PrimitiveType type = descriptor.getPrimitiveType();
+        PrimitiveType.PrimitiveTypeName typeName = type.getPrimitiveTypeName();
+        Statistics<?> statistics = Statistics.createStats(type);
+        int maxDefinition = descriptor.getMaxDefinitionLevel();
+
+        long row = firstRow - 1;
+        int position = 0;
+        long values = 0;
+        long digest = 0;
+        long missing = 0;
+        // The column reader reads the next page as soon as the last value of a page is consumed, so the
+        // values read equal those of the pages read only once the chunk is done
+        for (long read = 0; read < pageReader.values; read++) {
+            if (column.getCurrentRepetitionLevel() == 0) {
+                row++;
+                position = 0;
+            }
+            if (column.getCurrentDefinitionLevel() < maxDefinition) {
+                statistics.incrementNumNulls();
+                column.consume();
+                continue;
+            }
+            long fingerprint;
+            long hash;
+            switch (typeName) {
+                case INT32: {
+                    int value = column.getInteger();
+                    statistics.updateStats(value);
+                    fingerprint = value;
+                    hash = bloomFilter != null ? bloomFilter.hash(value) : 0;
+                    break;
+                }
+                case INT64: {
+                    long value = column.getLong();
+                    statistics.updateStats(value);
+                    fingerprint = value;
+                    hash = bloomFilter != null ? bloomFilter.hash(value) : 0;
+                    break;
+                }
+                case FLOAT: {
+                    float value = column.getFloat();
+                    statistics.updateStats(value);
+                    fingerprint = Float.floatToRawIntBits(value);
+                    hash = bloomFilter != null ? bloomFilter.hash(value) : 0;
+                    break;
+                }
+                case DOUBLE: {
+                    double value = column.getDouble();
+                    statistics.updateStats(value);
+                    fingerprint = Double.doubleToRawLongBits(value);
+                    hash = bloomFilter != null ? bloomFilter.hash(value) : 0;
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean value = column.getBoolean();
+                    statistics.updateStats(value);
+                    fingerprint = value ? 1 : 0;
+                    hash = 0;
+                    break;
+                }
+                default: {
+                    Binary value = column.getBinary();
+                    statistics.updateStats(value);
+                    fingerprint = fingerprint(value);
+                    hash = bloomFilter != null ? bloomFilter.hash(value) : 0;
+                    break;
+                }
+            }
+            if (bloomFilter != null && typeName != PrimitiveType.PrimitiveTypeName.BOOLEAN && !bloomFilter.findHash(hash)) {
+                missing++;
+            }
+            digest += term(fingerprint, row, position++);
+            values++;
+            column.consume();
+        }
+
+        results.values[leaf] += values;
+        results.digests[leaf] += digest;
+        if (missing > 0) {
+            results.failures.add(name + ": " + missing + " values are missing from the bloom filter");
+        }
+        checkStatistics(name, chunk.getStatistics(), statistics, results.failures);
+    }
+
+    /**
+     * Checks the statistics of a chunk, which may have been removed from the footer, against those of
+     * its decoded values. Binary minimums and maximums may be truncated, so they only need to bound
+     * the values.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void checkStatistics(String name, Statistics written, Statistics actual, List<String> failures) {
+        if (written == null || written.isEmpty()) return;
+        if (written.isNumNullsSet() && written.getNumNulls() != actual.getNumNulls()) {
+            failures.add(name + ": statistics count " + written.getNumNulls() + " nulls, the chunk has " + actual.getNumNulls());
+        }
+        if (written.hasNonNullValue() && actual.hasNonNullValue()) {
+            if (written.compareMinToValue(actual.genericGetMin()) > 0) {
+                failures.add(name + ": statistics minimum " + written.minAsString() + " is above the smallest value " + actual.minAsString());
+            }
+            if (written.compareMaxToValue(actual.genericGetMax()) < 0) {
+                failures.add(name + ": statistics maximum " + written.maxAsString() + " is below the largest value " + actual.maxAsString());
+            }
+        } else if (written.hasNonNullValue() != actual.hasNonNullValue()) {
+            failures.add(name + ": statistics " + (written.hasNonNullValue() ? "have" : "lack") + " a minimum and maximum, the chunk "
+                    + (actual.hasNonNullValue() ? "has" : "has no") + " values");
+        }
+    }
+
+    private static VersionParser.ParsedVersion writerVersion(String createdBy) {
+        try {
+            return VersionParser.parse(createdBy);
+        } catch (VersionParser.VersionParseException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long term(long fingerprint, long row, int position) {
+        return ColumnGenerator.mix(fingerprint ^ (ColumnGenerator.mix(row) + position));
+    }
+
+    private static long fingerprint(Binary value) {
+        ByteBuffer bytes = value.toByteBuffer();
+        long hash = FNV_OFFSET;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            hash = (hash ^ (bytes.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static Type project(GroupType group, String[] path, int index) {
+        Type field = group.getType(path[index]);
+        if (index == path.length - 1) return field;
+        return field.asGroupType().withNewFields(project(field.asGroupType(), path, index + 1));
+    }
+
+    private static int depth(Type type) {
+        if (type.isPrimitive()) return 0;
+        int depth = 0;
+        for (Type field : type.asGroupType().getFields()) {
+            depth = Math.max(depth, depth(field));
+        }
+        return depth + 1;
+    }
+
+    /**
+     * A field of the schema: a group with its fields, or a leaf column with its index.
+     */
+    private static final class Node {
+        final Node[] fields;
+        final int leaf;
+
+        private Node(Node[] fields, int leaf) {
+            this.fields = fields;
+            this.leaf = leaf;
+        }
+
+        static Node of(Type type, int[] leafCount) {
+            if (type.isPrimitive()) {
+                return new Node(null, leafCount[0]++);
+            }
+            List<Type> types = type.asGroupType().getFields();
+            Node[] fields = new Node[types.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = of(types.get(i), leafCount);
+            }
+            return new Node(fields, -1);
+        }
+    }
+
+    /**
+     * Page reader adding up the values of the data pages read through it.
+     */
+    private static final class CountingPageReader implements PageReader {
+        private final PageReader delegate;
+        long values;
+
+        CountingPageReader(PageReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public DictionaryPage readDictionaryPage() {
+            return delegate.readDictionaryPage();
+        }
+
+        @Override
+        public long getTotalValueCount() {
+            return delegate.getTotalValueCount();
+        }
+
+        @Override
+        public DataPage readPage() {
+            DataPage page = delegate.readPage();
+            if (page != null) {
+                values += page.getValueCount();
+            }
+            return page;
+        }
+    }
+
+    private static final class ChunkResults {
+        final long[] values;
+        final long[] digests;
+        final List<String> failures = new ArrayList<>();
+
+        ChunkResults(int leaves) {
+            values = new long[leaves];
+            digests = new long[leaves];
+        }
+
+        void add(ChunkResults other) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] += other.values[i];
+                digests[i] += other.digests[i];
+            }
+            failures.addAll(other.failures);
+        }
+    }
+
+    /**
+     * Passes every call on to the writer, adding the values to the digests of their columns.
+     */
+    private final class RecordingConsumer extends RecordConsumer {
+        private final RecordConsumer delegate;
+        private final Node[] path = new Node[depth + 1];
+        private final long[] lastRows = new long[leaves.size()];
+        private final int[] positions = new int[leaves.size()];
+        private int level;
+        private long row;
+
+        RecordingConsumer(RecordConsumer delegate) {
+            this.delegate = delegate;
+            Arrays.fill(lastRows, -1);
+        }
+
+        private void add(long fingerprint) {
+            int leaf = path[level].leaf;
+            if (lastRows[leaf] != row) {
+                lastRows[leaf] = row;
+                positions[leaf] = 0;
+            }
+            expectedDigests[leaf] += term(fingerprint, row, positions[leaf]++);
+            expectedValues[leaf]++;
+        }
+
+        @Override
+        public void startMessage() {
+            row = expectedRows++;
+            level = 0;
+            path[0] = root;
+            delegate.startMessage();
+        }
+
+        @Override
+        public void endMessage() {
+            delegate.endMessage();
+        }
+
+        @Override
+        public void startField(String field, int index) {
+            path[level + 1] = path[level].fields[index];
+            level++;
+            delegate.startField(field, index);
+        }
+
+        @Override
+        public void endField(String field, int index) {
+            level--;
+            delegate.endField(field, index);
+        }
+
+        @Override
+        public void startGroup() {
+            delegate.startGroup();
+        }
+
+        @Override
+        public void endGroup() {
+            delegate.endGroup();
+        }
+
+        @Override
+        public void addInteger(int value) {
+            add(value);
+            delegate.addInteger(value);
+        }
+
+        @Override
+        public void addLong(long value) {
+            add(value);
+            delegate.addLong(value);
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+            add(value ? 1 : 0);
+            delegate.addBoolean(value);
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+            add(fingerprint(value));
+            delegate.addBinary(value);
+        }
+
+        @Override
+        public void addFloat(float value) {
+            add(Float.floatToRawIntBits(value));
+            delegate.addFloat(value);
+        }
+
+        @Override
+        public void addDouble(double value) {
+            add(Double.doubleToRawLongBits(value));
+            delegate.addDouble(value);
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+    }
+}
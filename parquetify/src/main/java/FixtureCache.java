@@ -0,0 +1,274 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of generated files, enabled with {@code --cache}.
+ * <p>
+ * An entry is keyed by a SHA-256 hash of the definition, with the keys of its objects sorted and
+ * its inline data as written, of the partition count given on the command line and of the
+ * parquetify and parquet-java versions. It holds the generated file, or directory for partitioned
+ * and swept definitions, and its row count. Files are hard-linked between the output and the cache
+ * when both are on the same file system and copied otherwise.
+ * <p>
+ * The last modification time of an entry directory records its last use. When the cache is larger
+ * than its size limit when it is opened or after a store, the least recently used entries are
+ * deleted.
+ */
+final class FixtureCache {
+
+    private static final String FORMAT = "1";
+    private static final String OUTPUT = "output";
+    private static final String ROWS = "rows";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    FixtureCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    /**
+     * Hash of everything that determines the written files of {@code definition}.
+     */
+    static String key(Definition definition, int parallelism) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder header = new StringBuilder();
+        header.append(FORMAT).append('\n')
+                .append(parquetifyVersion()).append('\n')
+                .append(org.apache.parquet.Version.FULL_VERSION).append('\n')
+                .append(parallelism).append('\n');
+        appendCanonical(definition.getConfig(), header);
+        digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+        definition.digestData(digest);
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Links the cached output of {@code key} to {@code output}. Returns the number of rows of the
+     * entry, or -1 when it is not cached.
+     */
+    synchronized long restore(String key, Path output) {
+        Path entry = directory.resolve(key);
+        try {
+            if (!Files.isDirectory(entry)) {
+                misses.incrementAndGet();
+                return -1;
+            }
+            long rows = Long.parseLong(new String(Files.readAllBytes(entry.resolve(ROWS)), StandardCharsets.UTF_8).trim());
+            linkTree(entry.resolve(OUTPUT), output);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return rows;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring cache entry " + entry + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the generated {@code output} under {@code key}, then evicts the least recently used entries
+     * beyond the size limit. A failure only leaves the output uncached.
+     */
+    void store(String key, Path output, long rows) {
+        Path temporary = null;
+        try {
+            temporary = Files.createTempDirectory(directory, ".tmp-");
+            linkTree(output, temporary.resolve(OUTPUT));
+            Files.write(temporary.resolve(ROWS), Long.toString(rows).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temporary, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+                temporary = null;
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // Stored concurrently by another definition or process
+            }
+            evict(key);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not cache " + output + ": " + e.getMessage());
+        } finally {
+            if (temporary != null) {
+                deleteTree(temporary);
+            }
+        }
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    private synchronized void evict(String keep) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) list::iterator) {
+                if (entry.getFileName().toString().startsWith(".") || !Files.isDirectory(entry)) continue;
+                entries.add(entry);
+                total += size(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(FixtureCache::lastUsed));
+        for (Path entry : entries) {
+            if (total <= maxBytes) break;
+            if (entry.getFileName().toString().equals(keep)) continue;
+            long size = size(entry);
+            deleteTree(entry);
+            total -= size;
+        }
+    }
+
+    /**
+     * Hard-links {@code source}, a file or a directory tree, to {@code target}, replacing the files that
+     * already exist there.
+     */
+    private static void linkTree(Path source, Path target) throws IOException {
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Path destination = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(destination);
+                    continue;
+                }
+                Path parent = destination.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                Files.deleteIfExists(destination);
+                try {
+                    Files.createLink(destination, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, destination);
+                }
+            }
+        }
+    }
+
+    private static long size(Path entry) throws IOException {
+        try (Stream<Path> files = Files.walk(entry)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteTree(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Could not delete " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * JSON text of {@code value} with the keys of every object sorted, so that the key does not
+     * depend on how the definition is formatted.
+     */
+    private static void appendCanonical(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.append('{');
+            boolean first = true;
+            for (String key : new TreeSet<>(object.keySet())) {
+                if (!first) out.append(',');
+                first = false;
+                out.append(JSONObject.quote(key)).append(':');
+                appendCanonical(object.get(key), out);
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) out.append(',');
+                appendCanonical(array.get(i), out);
+            }
+            out.append(']');
+        } else {
+            out.append(JSONObject.valueToString(value));
+        }
+    }
+
+    private static String parquetifyVersion() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = FixtureCache.class.getResourceAsStream("/parquetify.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        return properties.getProperty("version", "unknown");
+    }
+
+    /**
+     * Parses a size in bytes with an optional {@code K}, {@code M}, {@code G} or {@code T} suffix.
+     */
+    static long parseSize(String size) {
+        String value = size.trim().toUpperCase();
+        long unit = 1;
+        if (value.endsWith("B")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        if (!value.isEmpty()) {
+            int suffix = "KMGT".indexOf(value.charAt(value.length() - 1));
+            if (suffix >= 0) {
+                unit = 1L << (10 * (suffix + 1));
+                value = value.substring(0, value.length() - 1);
+            }
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(value.trim()), unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new NumberFormatException("Invalid size: " + size);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import org.apache.parquet.format.ColumnChunk;
+import org.apache.parquet.format.FileMetaData;
+import org.apache.parquet.format.RowGroup;
+import org.apache.parquet.format.Util;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Edits the footer of a written file for the metadata that the Parquet writer does not let us choose:
+ * column chunk statistics ({@code options.statistics}), column and offset indexes
+ * ({@code options.pageIndex}) and the {@code sorting_columns} of row groups sorted with
+ * {@code options.sortBy}.
+ * <p>
+ * {@code statistics} and {@code pageIndex} are {@code "all"} (the default), {@code "none"} or the list of
+ * columns that keep them, a group keeping them for all its leaves. Removed page indexes are only
+ * unreferenced, their bytes stay in the file, and statistics in the data page headers are not
+ * affected. The footer is replaced in place, so this needs a local file with a plaintext footer;
+ * {@code sorting_columns} are left out of other files.
+ */
+final class FooterRewriter {
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    private FooterRewriter() {
+    }
+
+    /**
+     * Whether {@code options} remove statistics or page indexes from some columns.
+     */
+    static boolean hasColumnEdits(JSONObject options) {
+        boolean edits = false;
+        for (String key : new String[]{"statistics", "pageIndex"}) {
+            Object value = options.opt(key);
+            if (isAll(options, key)) continue;
+            if (!"none".equals(value) && !Boolean.FALSE.equals(value) && !(value instanceof JSONArray)) {
+                throw new IllegalArgumentException("Invalid " + key + ": " + value);
+            }
+            edits = true;
+        }
+        return edits;
+    }
+
+    /**
+     * Applies the edits asked by {@code options} to {@code file}. Returns the new size of the file.
+     */
+    static long rewrite(Path file, JSONObject options, RowSorter sorter) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer tail = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tail, size - 8);
+            int footerLength = tail.getInt(0);
+            byte[] magic = new byte[4];
+            tail.position(4);
+            tail.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Footer of " + file + " is encrypted or not a Parquet footer");
+            }
+            long footerStart = size - 8 - footerLength;
+            ByteBuffer footer = ByteBuffer.allocate(footerLength);
+            readFully(channel, footer, footerStart);
+            FileMetaData metadata = Util.readFileMetaData(new ByteArrayInputStream(footer.array()));
+
+            for (RowGroup rowGroup : metadata.getRow_groups()) {
+                for (ColumnChunk chunk : rowGroup.getColumns()) {
+                    String path = String.join(".", chunk.getMeta_data().getPath_in_schema());
+                    if (!isSelected(options, "statistics", path)) {
+                        chunk.getMeta_data().unsetStatistics();
+                    }
+                    if (!isSelected(options, "pageIndex", path)) {
+                        chunk.unsetColumn_index_offset();
+                        chunk.unsetColumn_index_length();
+                        chunk.unsetOffset_index_offset();
+                        chunk.unsetOffset_index_length();
+                    }
+                }
+                if (sorter != null) {
+                    rowGroup.setSorting_columns(sorter.sortingColumns());
+                }
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(footerLength + 8);
+            Util.writeFileMetaData(metadata, out);
+            int newLength = out.size();
+            out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(newLength).array());
+            out.write(MAGIC);
+            channel.truncate(footerStart);
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            long position = footerStart;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return position;
+        }
+    }
+
+    private static boolean isAll(JSONObject options, String key) {
+        Object value = options.opt(key);
+        return value == null || "all".equals(value) || Boolean.TRUE.equals(value);
+    }
+
+    private static boolean isSelected(JSONObject options, String key, String path) {
+        Object value = options.opt(key);
+        if (isAll(options, key)) return true;
+        if (!(value instanceof JSONArray)) return false;
+        for (Object column : (JSONArray) value) {
+            String name = String.valueOf(column);
+            if (path.equals(name) || path.startsWith(name + ".")) return true;
+        }
+        return false;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+}
@@ -1,19 +1,18 @@
 import org.apache.commons.cli.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.DirectByteBufferAllocator;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
 import org.apache.parquet.column.ParquetProperties;
-import org.apache.parquet.crypto.ColumnEncryptionProperties;
-import org.apache.parquet.crypto.FileEncryptionProperties;
-import org.apache.parquet.example.data.Group;
-import org.apache.parquet.example.data.simple.SimpleGroupFactory;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.example.ExampleParquetWriter;
-import org.apache.parquet.hadoop.example.GroupWriteSupport;
-import org.apache.parquet.hadoop.metadata.ColumnPath;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
 import org.apache.parquet.hadoop.util.HadoopOutputFile;
-import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.schema.LogicalTypeAnnotation;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.PrimitiveType;
@@ -21,44 +20,287 @@ import org.apache.parquet.schema.Types;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class GenerateParquet {
 
+    static final String STDOUT = "-";
+
     public static void main(String[] args) {
         CommandLine cmd = parseCommandLineArguments(args);
         if (cmd == null) return;
 
+        if (cmd.hasOption("serve")) {
+            serve(cmd);
+            return;
+        }
+        if (cmd.hasOption("merge")) {
+            if (!merge(cmd)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        String outputPath = cmd.getOptionValue("output");
+        String metricsPath = cmd.getOptionValue("metrics");
+        // The metrics report takes stdout unless the Parquet file does
+        PrintStream reportStream = System.out;
+        if (STDOUT.equals(outputPath)) {
+            reserveStdout();
+            reportStream = System.err;
+        } else if (STDOUT.equals(metricsPath)) {
+            reportStream = reserveStdout();
+        }
+
+        List<java.nio.file.Path> definitions;
+        int threads;
+        int parallelism;
+        FixtureCache cache;
+        WriterMemoryPool memoryPool;
         try {
-            String content = new String(Files.readAllBytes(Paths.get(cmd.getOptionValue("json"))));
-            JSONObject configJson = new JSONObject(content);
-            String fileName = configJson.getString("fileName");
-            String outputPath = cmd.getOptionValue("output");
-            generateParquet(configJson, outputPath + "/" + fileName);
+            definitions = DefinitionFiles.resolve(cmd.getOptionValue("json"));
+            threads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+            parallelism = Integer.parseInt(cmd.getOptionValue("parallelism", "0"));
+            cache = createCache(cmd);
+            memoryPool = createMemoryPool(cmd);
         } catch (IOException e) {
             System.err.println("Error reading the JSON file: " + e.getMessage());
             e.printStackTrace();
+            System.exit(1);
+            return;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (STDOUT.equals(outputPath) && definitions.size() > 1) {
+            System.err.println("Only one definition can be written to stdout, got " + definitions.size());
+            System.exit(1);
+            return;
+        }
+        if (STDOUT.equals(outputPath) && cmd.hasOption("verify")) {
+            System.err.println("A file written to stdout can not be verified");
+            System.exit(1);
+            return;
+        }
+
+        GenerationContext context = new GenerationContext(false, cache, memoryPool, cmd.hasOption("verify"));
+        List<GenerationResult> results = generateAll(definitions, outputPath, threads, parallelism, metricsPath != null, context);
+        boolean success = results.stream().allMatch(GenerationResult::isSuccess);
+        if (metricsPath != null) {
+            try {
+                writeMetrics(results, metricsPath, reportStream);
+            } catch (IOException e) {
+                System.err.println("Error writing metrics: " + e.getMessage());
+                success = false;
+            }
+        }
+        if (!success) {
+            System.exit(1);
         }
     }
 
-    private static CommandLine parseCommandLineArguments(String[] args) {
-        Options options = new Options();
+    /**
+     * Reserves stdout for data, such as Parquet bytes or server responses, by sending all console
+     * output, including log4j's, to stderr from now on. Returns a stream on the real stdout.
+     */
+    private static PrintStream reserveStdout() {
+        PrintStream stdout = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+        return stdout;
+    }
 
-        Option configFilePath = new Option("j", "json", true, "Path to the JSON file");
-        configFilePath.setRequired(true);
-        options.addOption(configFilePath);
+    /**
+     * Keeps the JVM, its Hadoop configuration and its JIT-compiled code warm across definitions sent as
+     * requests on stdin; see {@link GenerationServer}.
+     */
+    private static void serve(CommandLine cmd) {
+        PrintStream responses = reserveStdout();
 
-        Option outputPath = new Option("o", "output", true, "Output path for the Parquet file");
-        outputPath.setRequired(true);
-        options.addOption(outputPath);
+        int threads;
+        int parallelism;
+        FixtureCache cache;
+        WriterMemoryPool memoryPool;
+        try {
+            threads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+            parallelism = Integer.parseInt(cmd.getOptionValue("parallelism", "0"));
+            cache = createCache(cmd);
+            memoryPool = createMemoryPool(cmd);
+        } catch (IOException e) {
+            System.err.println("Error opening the cache: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        GenerationContext context = new GenerationContext(true, cache, memoryPool, cmd.hasOption("verify"));
+        GenerationServer server = new GenerationServer(context, cmd.getOptionValue("output"), parallelism, Math.max(threads, 1), responses);
+        try {
+            server.serve(System.in);
+        } catch (IOException e) {
+            System.err.println("Error reading requests: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Concatenates the files given to {@code --merge}, followed by the files generated from the
+     * {@code --json} definitions if any, into the {@code --output} file without re-encoding them; see
+     * {@link ParquetMerger}. Directories, such as partitioned outputs, stand for the Parquet files in
+     * them. A local output is written next to its final path and moved there once complete, so it can
+     * also be one of the inputs. Returns false when the merge failed, once its temporary files are
+     * deleted.
+     */
+    private static boolean merge(CommandLine cmd) {
+        String outputPath = cmd.getOptionValue("output");
+        if (STDOUT.equals(outputPath)) {
+            reserveStdout();
+        }
+        long start = System.nanoTime();
+        java.nio.file.Path localOutput = localPath(outputPath);
+        java.nio.file.Path generated = null;
+        java.nio.file.Path temporaryOutput = null;
+        try {
+            GenerationContext context = new GenerationContext(false, createCache(cmd), createMemoryPool(cmd), cmd.hasOption("verify"));
+            List<String> inputs = new ArrayList<>();
+            for (String input : cmd.getOptionValues("merge")) {
+                inputs.addAll(parquetFiles(input));
+            }
 
+            if (cmd.hasOption("json")) {
+                java.nio.file.Path parent = localOutput == null ? null : localOutput.toAbsolutePath().getParent();
+                generated = parent == null ? Files.createTempDirectory("parquetify-merge-") : Files.createTempDirectory(parent, ".merge-");
+                int parallelism = Integer.parseInt(cmd.getOptionValue("parallelism", "0"));
+                for (java.nio.file.Path definition : DefinitionFiles.resolve(cmd.getOptionValue("json"))) {
+                    GenerationResult result = generate(definition.toString(), () -> Definition.read(definition), generated.toString(),
+                            context, parallelism, false);
+                    if (!result.isSuccess()) {
+                        return false;
+                    }
+                    inputs.addAll(parquetFiles(result.outputFile));
+                }
+            }
+
+            List<InputFile> inputFiles = new ArrayList<>();
+            for (String input : inputs) {
+                inputFiles.add(HadoopInputFile.fromPath(new Path(input), context.conf));
+            }
+            OutputFile output;
+            if (localOutput != null) {
+                temporaryOutput = localOutput.resolveSibling("." + localOutput.getFileName() + ".merge-" + System.nanoTime());
+                output = new NioOutputFile(temporaryOutput, NioOutputFile.DEFAULT_BUFFER_SIZE, false);
+            } else {
+                output = createOutputFile(outputPath, context.conf, new JSONObject());
+            }
+            long rows = ParquetMerger.merge(inputFiles, output);
+            if (temporaryOutput != null) {
+                Files.move(temporaryOutput, localOutput, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temporaryOutput = null;
+            }
+            System.out.println("Merged " + inputs.size() + " files (" + rows + " rows) into " + outputPath
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error merging Parquet files: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            try {
+                if (temporaryOutput != null) {
+                    Files.deleteIfExists(temporaryOutput);
+                }
+                if (generated != null) {
+                    try (Stream<java.nio.file.Path> files = Files.walk(generated)) {
+                        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not delete temporary files: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The Parquet files of {@code path}: the files under it, in name order, when it is a local
+     * directory, and the path itself otherwise.
+     */
+    private static List<String> parquetFiles(String path) throws IOException {
+        java.nio.file.Path local = localPath(path);
+        if (local == null || !Files.isDirectory(local)) {
+            return Collections.singletonList(path);
+        }
+        try (Stream<java.nio.file.Path> files = Files.walk(local)) {
+            List<String> parquetFiles = files.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".parquet"))
+                    .map(java.nio.file.Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (parquetFiles.isEmpty()) {
+                throw new IllegalArgumentException("No Parquet files found in directory " + path);
+            }
+            return parquetFiles;
+        }
+    }
+
+    private static FixtureCache createCache(CommandLine cmd) throws IOException {
+        if (!cmd.hasOption("cache")) return null;
+        long maxBytes = cmd.hasOption("cache-size") ? FixtureCache.parseSize(cmd.getOptionValue("cache-size")) : Long.MAX_VALUE;
+        return new FixtureCache(Paths.get(cmd.getOptionValue("cache")), maxBytes);
+    }
+
+    private static WriterMemoryPool createMemoryPool(CommandLine cmd) {
+        if (!cmd.hasOption("memory-budget")) return null;
+        if (cmd.hasOption("cache")) {
+            System.out.println("The cache is not used with --memory-budget, which can change the row groups of the files");
+        }
+        return new WriterMemoryPool(FixtureCache.parseSize(cmd.getOptionValue("memory-budget")));
+    }
+
+    private static CommandLine parseCommandLineArguments(String[] args) {
         CommandLineParser parser = new DefaultParser();
+        // The options required depend on the mode, so it is found first with none of them required:
+        // in serve mode the definitions come from stdin and every request may name its own output, and
+        // merges only generate files when a definition is given
+        boolean serve = false;
+        boolean merge = false;
+        try {
+            CommandLine modes = parser.parse(commandLineOptions(true, true), args);
+            serve = modes.hasOption("serve");
+            merge = modes.hasOption("merge");
+        } catch (ParseException e) {
+            // Reported by the parse below
+        }
+
+        Options options = commandLineOptions(serve, merge);
         HelpFormatter formatter = new HelpFormatter();
         try {
             return parser.parse(options, args);
@@ -69,58 +311,549 @@ public class GenerateParquet {
         }
     }
 
-    private static void generateParquet(JSONObject configJson, String filePath) {
-        ParquetWriter<Group> writer = null;
-        try {
-            MessageType schema = buildSchema(configJson.getJSONArray("schema"));
-            Configuration conf = new Configuration();
-            GroupWriteSupport.setSchema(schema, conf);
-            SimpleGroupFactory groupFactory = new SimpleGroupFactory(schema);
-
-            // Set Hadoop configurations from JSON
-            if (configJson.has("hadoop")) {
-                JSONObject hadoopConfigs = configJson.getJSONObject("hadoop").getJSONObject("options");
-                for (String key : hadoopConfigs.keySet()) {
-                    conf.set(key, hadoopConfigs.getString(key));
+    private static Options commandLineOptions(boolean serve, boolean merge) {
+        Options options = new Options();
+        Option configFilePath = new Option("j", "json", true, "Path to the JSON file, a directory, a glob or a manifest of JSON files");
+        configFilePath.setRequired(!serve && !merge);
+        options.addOption(configFilePath);
+
+        Option outputPath = new Option("o", "output", true, "Output path for the Parquet file, or - to write it to stdout");
+        outputPath.setRequired(!serve);
+        options.addOption(outputPath);
+
+        Option threads = new Option("t", "threads", true, "Number of definitions generated concurrently (defaults to the number of CPUs)");
+        options.addOption(threads);
+
+        Option parallelism = new Option("p", "parallelism", true, "Number of partitions each definition is split into (overrides options.partitions)");
+        options.addOption(parallelism);
+
+        Option metrics = new Option("m", "metrics", true, "Write a JSON report of timings and sizes to this file, or - for stdout");
+        options.addOption(metrics);
+
+        Option serveOption = new Option("s", "serve", false, "Read generation requests from stdin, one JSON object per line, and answer each on stdout");
+        options.addOption(serveOption);
+
+        Option cache = new Option("c", "cache", true, "Directory of a cache of generated files, reused when the definition has not changed");
+        options.addOption(cache);
+
+        Option cacheSize = new Option(null, "cache-size", true, "Size limit of the cache, such as 20G; least recently used files are evicted");
+        options.addOption(cacheSize);
+
+        Option mergeOption = new Option(null, "merge", true, "Concatenate these Parquet files or directories, then the files generated from --json, into the --output file");
+        mergeOption.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(mergeOption);
+
+        Option verify = new Option(null, "verify", false, "Read every written file back and check it against the rows written");
+        options.addOption(verify);
+
+        Option memoryBudget = new Option(null, "memory-budget", true, "Memory shared by the row groups of all writers, such as 2G; row groups are made smaller to fit, so with -t above 1 they can differ from run to run, and the cache is not used");
+        options.addOption(memoryBudget);
+        return options;
+    }
+
+    /**
+     * Generates every definition on a pool of {@code threads} workers sharing one pre-loaded Hadoop
+     * configuration.
+     */
+    private static List<GenerationResult> generateAll(List<java.nio.file.Path> definitions, String outputPath, int threads,
+                                                      int parallelism, boolean columnTiming, GenerationContext context) {
+
+        List<GenerationResult> results = new ArrayList<>();
+        if (definitions.size() == 1 || threads <= 1) {
+            for (java.nio.file.Path definition : definitions) {
+                results.add(generate(definition.toString(), () -> Definition.read(definition), outputPath, context, parallelism, columnTiming));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, definitions.size()));
+            try {
+                List<Future<GenerationResult>> futures = new ArrayList<>();
+                for (java.nio.file.Path definition : definitions) {
+                    futures.add(executor.submit(() -> generate(definition.toString(), () -> Definition.read(definition), outputPath, context,
+                            parallelism, columnTiming)));
                 }
-                // Print all Hadoop configuration values and keys
-                System.out.println("Hadoop configurations:");
-                for (String key : hadoopConfigs.keySet()) {
-                    System.out.println("    " + key + ": " + hadoopConfigs.getString(key));
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        results.add(futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        results.add(GenerationResult.failed(definitions.get(i).toString(), null, e.getCause(), null));
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int i = results.size(); i < definitions.size(); i++) {
+                    results.add(GenerationResult.failed(definitions.get(i).toString(), null, new InterruptedIOException("Interrupted"), null));
+                }
+            } finally {
+                executor.shutdownNow();
             }
+        }
 
-            writer = createParquetWriter(filePath, conf, configJson.getJSONObject("options"));
-            writeData(writer, groupFactory, configJson.getJSONArray("schema"));
-        } catch (IOException e) {
+        if (definitions.size() > 1) {
+            printSummary(results);
+        }
+        if (context.cache != null) {
+            System.out.println("Cache: " + context.cache.getHits() + " hits, " + context.cache.getMisses() + " misses");
+        }
+        return results;
+    }
+
+    /**
+     * Reads and generates one definition, reporting failures in the result instead of throwing.
+     * {@code label} names the definition in messages and metrics.
+     */
+    static GenerationResult generate(String label, DefinitionSource source, String outputPath, GenerationContext context,
+                                     int parallelism, boolean columnTiming) {
+        long start = System.nanoTime();
+        WriteMetrics metrics = new WriteMetrics(label, columnTiming);
+        Definition definition;
+        String filePath;
+        try {
+            definition = source.read();
+            metrics.setParseNanos(System.nanoTime() - start);
+            filePath = STDOUT.equals(outputPath) ? STDOUT : outputPath + "/" + definition.getConfig().getString("fileName");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading the JSON file: " + e.getMessage());
+            e.printStackTrace();
+            metrics.finish(System.nanoTime() - start, e);
+            return GenerationResult.failed(label, null, e, metrics);
+        }
+        metrics.setOutput(filePath);
+
+        if (!context.outputFiles.add(filePath)) {
+            String message = "Output file " + filePath + " is already generated by another definition";
+            System.err.println("Error generating Parquet file: " + message);
+            IllegalArgumentException error = new IllegalArgumentException(message);
+            metrics.finish(System.nanoTime() - start, error);
+            return GenerationResult.failed(label, filePath, error, metrics);
+        }
+
+        try {
+            // Row groups made smaller by the memory budget depend on the other files written at the same
+            // time, so such files are neither reused nor kept
+            boolean cached = context.cache != null && context.memoryPool == null;
+            if (context.cache != null && !cached) {
+                metrics.setCache("bypass");
+            }
+            java.nio.file.Path localPath = cached ? localPath(filePath) : null;
+            String cacheKey = localPath != null ? FixtureCache.key(definition, parallelism) : null;
+            if (cacheKey != null) {
+                long rows = context.cache.restore(cacheKey, localPath);
+                metrics.setCache(rows >= 0 ? "hit" : "miss");
+                if (rows >= 0) {
+                    System.out.println("Restored " + filePath + " from the cache");
+                    long elapsed = System.nanoTime() - start;
+                    metrics.finish(elapsed, null);
+                    return new GenerationResult(label, filePath, rows, elapsed / 1_000_000, null, metrics);
+                }
+            }
+
+            long rows = generateParquet(definition, filePath, context, parallelism, metrics);
+            if (cacheKey != null) {
+                context.cache.store(cacheKey, localPath, rows);
+            }
+            long elapsed = System.nanoTime() - start;
+            metrics.finish(elapsed, null);
+            return new GenerationResult(label, filePath, rows, elapsed / 1_000_000, null, metrics);
+        } catch (IOException | RuntimeException e) {
             System.err.println("Error generating Parquet file: " + e.getMessage());
             e.printStackTrace();
+            metrics.finish(System.nanoTime() - start, e);
+            return GenerationResult.failed(label, filePath, e, metrics);
+        } finally {
+            if (context.releaseOutputs) {
+                context.outputFiles.remove(filePath);
+            }
+        }
+    }
+
+    private static void writeMetrics(List<GenerationResult> results, String metricsPath, PrintStream reportStream) throws IOException {
+        JSONArray definitions = new JSONArray();
+        for (GenerationResult result : results) {
+            if (result.metrics != null) {
+                definitions.put(result.metrics.toJson());
+            }
+        }
+        JSONObject report = new JSONObject();
+        report.put("definitions", definitions);
+        String json = report.toString(2);
+        if (STDOUT.equals(metricsPath)) {
+            reportStream.println(json);
+            reportStream.flush();
+        } else {
+            Files.write(Paths.get(metricsPath), (json + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void printSummary(List<GenerationResult> results) {
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+        System.out.println("Summary: " + (results.size() - failed) + " succeeded, " + failed + " failed");
+        for (GenerationResult result : results) {
+            if (result.isSuccess()) {
+                System.out.println("    OK      " + result.definition + " -> " + result.outputFile
+                        + " (" + result.rows + " rows, " + result.millis + " ms)");
+            } else {
+                System.out.println("    FAILED  " + result.definition + ": " + result.error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads a definition from a file or from the body of a request.
+     */
+    interface DefinitionSource {
+        Definition read() throws IOException;
+    }
+
+    /**
+     * State shared by the definitions generated in one process.
+     */
+    static final class GenerationContext {
+        final Configuration conf = new Configuration();
+        final Set<String> outputFiles = ConcurrentHashMap.newKeySet();
+        final boolean releaseOutputs;
+        final FixtureCache cache;
+        final WriterMemoryPool memoryPool;
+        final boolean verify;
+
+        /**
+         * @param releaseOutputs whether an output file can be generated again once the definition that
+         *                       claimed it has finished, as a long-running server allows
+         * @param cache          cache of generated files, or null
+         * @param memoryPool     memory budget of the writers, or null when it is not limited
+         * @param verify         whether every written file is read back and checked; see {@link FileVerifier}
+         */
+        GenerationContext(boolean releaseOutputs, FixtureCache cache, WriterMemoryPool memoryPool, boolean verify) {
+            this.releaseOutputs = releaseOutputs;
+            this.cache = cache;
+            this.memoryPool = memoryPool;
+            this.verify = verify;
+            // Load the default resources once; every definition works on its own copy
+            conf.size();
+        }
+    }
+
+    static final class GenerationResult {
+        final String definition;
+        final String outputFile;
+        final long rows;
+        final long millis;
+        final Throwable error;
+        final WriteMetrics metrics;
+
+        GenerationResult(String definition, String outputFile, long rows, long millis, Throwable error, WriteMetrics metrics) {
+            this.definition = definition;
+            this.outputFile = outputFile;
+            this.rows = rows;
+            this.millis = millis;
+            this.error = error;
+            this.metrics = metrics;
+        }
+
+        static GenerationResult failed(String definition, String outputFile, Throwable error, WriteMetrics metrics) {
+            return new GenerationResult(definition, outputFile, 0, 0, error, metrics);
+        }
+
+        boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Writes the definition to {@code filePath}, or to {@code part-NNNNN.parquet} files in a directory of
+     * that name when it is split into more than one partition ({@code parallelism} overrides
+     * {@code options.partitions} when positive), or to one file per combination of its {@code sweep}
+     * block in a directory of that name. Returns the number of rows written.
+     */
+    private static long generateParquet(Definition definition, String filePath, GenerationContext context, int parallelism,
+                                        WriteMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        JSONObject configJson = definition.getConfig();
+        MessageType schema = buildSchema(configJson.getJSONArray("schema"));
+        Configuration conf = new Configuration(context.conf);
+
+        // Set Hadoop configurations from JSON
+        if (configJson.has("hadoop")) {
+            JSONObject hadoopConfigs = configJson.getJSONObject("hadoop").getJSONObject("options");
+            for (String key : hadoopConfigs.keySet()) {
+                conf.set(key, hadoopConfigs.getString(key));
+            }
+            // Print all Hadoop configuration values and keys
+            System.out.println("Hadoop configurations:");
+            for (String key : hadoopConfigs.keySet()) {
+                System.out.println("    " + key + ": " + hadoopConfigs.getString(key));
+            }
+        }
+
+        JSONObject options = configJson.getJSONObject("options");
+        int partitions = parallelism > 0 ? parallelism : options.optInt("partitions", 1);
+        if (partitions > 1 && STDOUT.equals(filePath)) {
+            throw new IllegalArgumentException("Partitioned output can not be written to stdout");
+        }
+        JSONObject sweep = configJson.optJSONObject("sweep");
+        if (sweep != null && partitions > 1) {
+            throw new IllegalArgumentException("A sweep can not be combined with partitions");
+        }
+        if (sweep != null && STDOUT.equals(filePath)) {
+            throw new IllegalArgumentException("A sweep can not be written to stdout");
+        }
+        metrics.addSchemaNanos(System.nanoTime() - start);
+        if (sweep != null) {
+            return writeSweep(definition, filePath, conf, context, schema, options, sweep, metrics);
+        }
+        if (partitions > 1) {
+            return writePartitions(definition, filePath, conf, context, schema, options, partitions, metrics);
+        }
+
+        long numRows = calculateNumRows(definition);
+        System.out.println("Number of rows to write: " + numRows);
+        writeFile(filePath, conf, context, schema, definition, options, metrics, metrics.newFile(filePath), numRows, 0, 1, false);
+        System.out.println("Data written successfully");
+        return numRows;
+    }
+
+    private static long writePartitions(Definition definition, String directory, Configuration conf, GenerationContext context,
+                                        MessageType schema, JSONObject options, int partitions, WriteMetrics metrics) throws IOException {
+        long numRows = calculateNumRows(definition);
+        String partitioning = options.optString("partitioning", "contiguous");
+        boolean hash;
+        if ("hash".equalsIgnoreCase(partitioning)) {
+            hash = true;
+        } else if ("contiguous".equalsIgnoreCase(partitioning)) {
+            hash = false;
+        } else {
+            throw new IllegalArgumentException("Invalid partitioning: " + partitioning);
+        }
+        System.out.println("Number of rows to write: " + numRows + " in " + partitions + " " + partitioning.toLowerCase() + " partitions");
+        definition.indexRows();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(partitions, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                String partFile = directory + "/" + String.format("part-%05d.parquet", partition);
+                futures.add(executor.submit(() -> writeFile(partFile, new Configuration(conf), context, schema, definition, options, metrics,
+                        metrics.newFile(partFile), numRows, partition, partitions, hash)));
+            }
+            long written = 0;
+            for (Future<Long> future : futures) {
+                written += future.get();
+            }
+            System.out.println("Data written successfully");
+            return written;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing partitions");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the rows once for every combination of the option values listed in {@code sweep}, each
+     * combination overriding the corresponding {@code options} in its own file of {@code directory},
+     * and prints the size, compression ratio and write time of every file.
+     */
+    private static long writeSweep(Definition definition, String directory, Configuration conf, GenerationContext context,
+                                   MessageType schema, JSONObject options, JSONObject sweep, WriteMetrics metrics) throws IOException {
+        List<String> keys = new ArrayList<>(sweep.keySet());
+        Collections.sort(keys);
+        List<JSONArray> values = new ArrayList<>();
+        int combinations = 1;
+        for (String key : keys) {
+            JSONArray keyValues = sweep.optJSONArray(key);
+            if (keyValues == null || keyValues.isEmpty()) {
+                throw new IllegalArgumentException("Sweep of " + key + " must be a non-empty array of values");
+            }
+            values.add(keyValues);
+            combinations = Math.multiplyExact(combinations, keyValues.length());
+        }
+
+        long numRows = calculateNumRows(definition);
+        System.out.println("Number of rows to write: " + numRows + " in " + combinations + " combinations of " + String.join(", ", keys));
+
+        List<String> names = new ArrayList<>();
+        List<WriteMetrics.FileMetrics> files = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(combinations, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            int[] indexes = new int[keys.size()];
+            for (int combination = 0; combination < combinations; combination++) {
+                JSONObject combinedOptions = new JSONObject(options.toMap());
+                StringBuilder name = new StringBuilder();
+                for (int k = 0; k < keys.size(); k++) {
+                    Object value = values.get(k).get(indexes[k]);
+                    combinedOptions.put(keys.get(k), value);
+                    if (name.length() > 0) name.append(',');
+                    name.append(keys.get(k)).append('=').append(sweepValueName(value));
+                }
+                // Odometer over the value indexes, the last key changing fastest
+                for (int k = keys.size() - 1; k >= 0 && ++indexes[k] == values.get(k).length(); k--) {
+                    indexes[k] = 0;
+                }
+
+                String combinationFile = directory + "/" + name + ".parquet";
+                WriteMetrics.FileMetrics fileMetrics = metrics.newFile(combinationFile);
+                names.add(name.toString());
+                files.add(fileMetrics);
+                futures.add(executor.submit(() -> writeFile(combinationFile, new Configuration(conf), context, schema, definition, combinedOptions,
+                        metrics, fileMetrics, numRows, 0, 1, false)));
+            }
+            long written = 0;
+            for (Future<Long> future : futures) {
+                written += future.get();
+            }
+            System.out.println("Data written successfully");
+            printSweepSummary(names, files);
+            return written;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the sweep");
         } finally {
-            if (writer != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Part of a sweep file name for one option value: lists such as {@code encodings} are joined with
+     * {@code +}, and characters that do not belong in a file name are replaced.
+     */
+    private static String sweepValueName(Object value) {
+        String name;
+        if (value instanceof JSONArray) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : (JSONArray) value) {
+                elements.add(String.valueOf(element));
+            }
+            name = String.join("+", elements);
+        } else {
+            name = String.valueOf(value);
+        }
+        return name.replaceAll("[^A-Za-z0-9._+-]", "_");
+    }
+
+    private static void printSweepSummary(List<String> names, List<WriteMetrics.FileMetrics> files) {
+        int width = "combination".length();
+        for (String name : names) {
+            width = Math.max(width, name.length());
+        }
+        String format = "    %-" + width + "s  %14s  %8s  %10s%n";
+        System.out.println("Sweep summary:");
+        System.out.printf(format, "combination", "bytes", "ratio", "write ms");
+        for (int i = 0; i < names.size(); i++) {
+            WriteMetrics.FileMetrics file = files.get(i);
+            System.out.printf(format, names.get(i), file.getBytes(), String.format("%.2f", file.getCompressionRatio()),
+                    file.getWriteNanos() / 1_000_000);
+        }
+    }
+
+    /**
+     * Writes one Parquet file with the rows of one partition, recording its timings and footer, and
+     * reads it back when the context verifies files. The memory of its row groups is reserved from the
+     * memory budget of the context while the file is written, which may make them smaller than
+     * {@code options.rowGroupSize}.
+     */
+    private static long writeFile(String filePath, Configuration conf, GenerationContext context, MessageType schema,
+                                  Definition definition, JSONObject options, WriteMetrics metrics, WriteMetrics.FileMetrics fileMetrics,
+                                  long numRows, int partition, int partitions, boolean hash) throws IOException {
+        if (context.verify && STDOUT.equals(filePath)) {
+            throw new IllegalArgumentException("A file written to stdout can not be verified");
+        }
+        WriterMemoryPool memoryPool = context.memoryPool;
+        long rowGroupSize = sizeOption(options, "rowGroupSize", ParquetWriter.DEFAULT_BLOCK_SIZE);
+        long reserved = memoryPool != null ? memoryPool.reserve(rowGroupSize) : rowGroupSize;
+        try {
+            if (reserved < rowGroupSize) {
+                System.out.println("Row groups of " + filePath + " limited to " + reserved + " bytes by the memory budget");
+            }
+            long start = System.nanoTime();
+            RowSorter sorter = RowSorter.create(options, schema);
+            java.nio.file.Path footerFile = options.has("encryption") ? null : localPath(filePath);
+            if (FooterRewriter.hasColumnEdits(options) && footerFile == null) {
+                throw new IllegalArgumentException("The statistics and pageIndex options need a local, unencrypted output file");
+            }
+            if (sorter != null && footerFile == null) {
+                System.out.println("Rows of " + filePath + " are sorted, but sorting_columns can only be recorded in a local, unencrypted output file");
+            }
+            Map<String, Long> estimatedNdv = estimateBloomFilterNdv(definition, options, numRows, partition, partitions, hash);
+            FileVerifier verifier = context.verify ? new FileVerifier(schema) : null;
+            ParquetWriter<WritePlan> writer = createParquetWriter(filePath, conf, schema, options, reserved, estimatedNdv, verifier,
+                    fileMetrics);
+            metrics.addSchemaNanos(System.nanoTime() - start);
+
+            long rows;
+            try {
+                long writeStart = System.nanoTime();
+                rows = writeRows(writer, schema, definition, options, sorter, metrics, fileMetrics, numRows, partition, partitions, hash);
+                fileMetrics.written(rows, System.nanoTime() - writeStart);
+            } catch (IOException | RuntimeException | Error e) {
                 try {
                     writer.close();
-                } catch (IOException e) {
-                    System.err.println("Error closing Parquet writer: " + e.getMessage());
-                    e.printStackTrace();
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
                 }
+                throw e;
+            }
+
+            long closeStart = System.nanoTime();
+            writer.close();
+            if (footerFile != null && (sorter != null || FooterRewriter.hasColumnEdits(options))) {
+                fileMetrics.rewritten(FooterRewriter.rewrite(footerFile, options, sorter));
+            }
+            fileMetrics.closed(System.nanoTime() - closeStart, writer.getFooter());
+
+            FileEncryption encryption = FileEncryption.of(options);
+            if (encryption != null && metrics.isColumnTiming() && !STDOUT.equals(filePath)) {
+                fileMetrics.encrypted(encryption, encryption.timeColumnCiphers(HadoopInputFile.fromPath(new Path(filePath), conf),
+                        readOptions(conf, options)));
+            }
+
+            if (verifier != null) {
+                long verifyStart = System.nanoTime();
+                long values = verifier.verify(HadoopInputFile.fromPath(new Path(filePath), conf), () -> readOptions(conf, options),
+                        Runtime.getRuntime().availableProcessors());
+                long verifyNanos = System.nanoTime() - verifyStart;
+                fileMetrics.verified(verifyNanos);
+                System.out.println("Verified " + filePath + ": " + rows + " rows, " + values + " values in "
+                        + verifyNanos / 1_000_000 + " ms");
+            }
+            return rows;
+        } finally {
+            if (memoryPool != null) {
+                memoryPool.release(reserved);
             }
         }
     }
 
-    private static ParquetWriter<Group> createParquetWriter(String filePath, Configuration conf, JSONObject options) throws IOException {
-        Path path = new Path(filePath);
+    private static ParquetWriter<WritePlan> createParquetWriter(String filePath, Configuration conf, MessageType schema, JSONObject options,
+                                                                long rowGroupSize, Map<String, Long> estimatedNdv, FileVerifier verifier,
+                                                                WriteMetrics.FileMetrics fileMetrics) throws IOException {
         String compressionCodec = options.optString("compression", "SNAPPY").toUpperCase();
         String writerVersion = options.optString("writerVersion", "1.0");
-        long rowGroupSize = options.optInt("rowGroupSize", 128 * 1024 * 1024);
-        int pageSize = options.optInt("pageSize", 1024 * 1024);
+        int pageSize = intSizeOption(options, "pageSize", ParquetWriter.DEFAULT_PAGE_SIZE);
         JSONArray encodings = options.optJSONArray("encodings");
         if (encodings == null) {
             encodings = new JSONArray();
             encodings.put("PLAIN");
         }
-        String bloomFilterOption = options.optString("bloomFilter", "none");
+        boolean groupWriteSupport = "group".equalsIgnoreCase(options.optString("writeSupport", "direct"));
 
-        ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(HadoopOutputFile.fromPath(path, conf))
+        PlanWriteSupport.Builder builder = PlanWriteSupport.builder(fileMetrics.meter(createOutputFile(filePath, conf, options)))
+                .withSchema(schema)
+                .withGroupWriteSupport(groupWriteSupport)
+                .withVerifier(verifier)
                 .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
                 .withCompressionCodec(CompressionCodecName.valueOf(compressionCodec))
                 .withRowGroupSize(rowGroupSize)
@@ -130,7 +863,26 @@ public class GenerateParquet {
                 .withConf(conf);
 
         configureEncodings(builder, encodings);
-        configureBloomFilters(builder, bloomFilterOption, options);
+        configureBloomFilters(builder, options, estimatedNdv);
+
+        String allocator = options.optString("allocator", "heap");
+        if ("direct".equalsIgnoreCase(allocator)) {
+            builder.withAllocator(new DirectByteBufferAllocator());
+        } else if ("heap".equalsIgnoreCase(allocator)) {
+            builder.withAllocator(new HeapByteBufferAllocator());
+        } else {
+            throw new IllegalArgumentException("Invalid allocator: " + allocator);
+        }
+
+        if (options.has("pageRowCountLimit")) {
+            builder.withPageRowCountLimit(options.getInt("pageRowCountLimit"));
+        }
+        if (options.has("columnIndexTruncateLength")) {
+            builder.withColumnIndexTruncateLength(options.getInt("columnIndexTruncateLength"));
+        }
+        if (options.has("statisticsTruncateLength")) {
+            builder.withStatisticsTruncateLength(options.getInt("statisticsTruncateLength"));
+        }
 
         if (options.has("extraMetaData")) {
             JSONObject extraMetaDataJson = options.getJSONObject("extraMetaData");
@@ -141,47 +893,79 @@ public class GenerateParquet {
             builder.withExtraMetaData(extraMetaData);
         }
 
-        if (options.has("encryption")) {
-            JSONObject encryptionOptions = options.getJSONObject("encryption");
-            byte[] footerKey = encryptionOptions.getString("footerKey").getBytes(StandardCharsets.UTF_8);
-            FileEncryptionProperties.Builder encryptionBuilder = FileEncryptionProperties.builder(footerKey);
+        FileEncryption encryption = FileEncryption.of(options);
+        if (encryption != null) {
+            builder.withEncryption(encryption.encryptionProperties());
+        }
 
-            if (encryptionOptions.has("aadPrefix")) {
-                byte[] aadPrefix = encryptionOptions.getString("aadPrefix").getBytes(StandardCharsets.UTF_8);
-                encryptionBuilder.withAADPrefix(aadPrefix);
-            }
+        return builder.build();
+    }
 
-            if (encryptionOptions.has("storeAadPrefixInFile")) {
-                boolean storeAadPrefixInFile = encryptionOptions.getBoolean("storeAadPrefixInFile");
-                if (!storeAadPrefixInFile) {
-                    encryptionBuilder.withoutAADPrefixStorage();
-                }
-            }
+    /**
+     * Options to read a written file back, with the keys to decrypt it.
+     */
+    private static ParquetReadOptions readOptions(Configuration conf, JSONObject options) {
+        HadoopReadOptions.Builder builder = HadoopReadOptions.builder(conf);
+        FileEncryption encryption = FileEncryption.of(options);
+        if (encryption != null) {
+            builder.withDecryption(encryption.decryptionProperties());
+        }
+        return builder.build();
+    }
 
-            if (encryptionOptions.has("footerKeyMetadata")) {
-                byte[] footerKeyMetadata = encryptionOptions.getString("footerKeyMetadata").getBytes(StandardCharsets.UTF_8);
-                encryptionBuilder.withFooterKeyMetadata(footerKeyMetadata);
-            }
+    /**
+     * A size in bytes from {@code options}: a number, a string with a {@code K}, {@code M}, {@code G}
+     * or {@code T} suffix such as {@code "4G"}, or {@code "default"}.
+     */
+    private static long sizeOption(JSONObject options, String key, long defaultValue) {
+        Object value = options.opt(key);
+        if (value == null || "default".equals(value)) return defaultValue;
+        long size = value instanceof Number ? options.getLong(key) : FixtureCache.parseSize(value.toString());
+        if (size <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return size;
+    }
 
-            if (encryptionOptions.has("encryptedColumns")) {
-                Map<ColumnPath, ColumnEncryptionProperties> encryptedColumns = new HashMap<>();
-                JSONArray columnsArray = encryptionOptions.getJSONArray("encryptedColumns");
-                for (int i = 0; i < columnsArray.length(); i++) {
-                    JSONObject column = columnsArray.getJSONObject(i);
-                    ColumnPath columnPath = ColumnPath.get(column.getString("path"));
-                    ColumnEncryptionProperties columnProperties = ColumnEncryptionProperties.builder(columnPath, true).build();
-                    encryptedColumns.put(columnPath, columnProperties);
-                }
-                encryptionBuilder.withEncryptedColumns(encryptedColumns);
-            }
+    /**
+     * A size from {@code options} for the settings that parquet-java keeps in an {@code int}.
+     */
+    private static int intSizeOption(JSONObject options, String key, int defaultValue) {
+        long size = sizeOption(options, key, defaultValue);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(key + " must be smaller than 2G: " + options.get(key));
+        }
+        return (int) size;
+    }
 
-            builder.withEncryption(encryptionBuilder.build());
+    /**
+     * Local paths are written with {@link NioOutputFile} and {@code -} to stdout; Hadoop file systems are
+     * only used for other schemes such as {@code hdfs://} or {@code s3a://}.
+     */
+    private static OutputFile createOutputFile(String filePath, Configuration conf, JSONObject options) throws IOException {
+        int bufferSize = intSizeOption(options, "outputBufferSize", NioOutputFile.DEFAULT_BUFFER_SIZE);
+        if (STDOUT.equals(filePath)) {
+            return new StreamOutputFile(new FileOutputStream(FileDescriptor.out), "stdout", bufferSize);
+        }
+        java.nio.file.Path localPath = localPath(filePath);
+        if (localPath == null) {
+            return HadoopOutputFile.fromPath(new Path(filePath), conf);
         }
+        return new NioOutputFile(localPath, bufferSize, options.optBoolean("fsync", false));
+    }
 
-        return builder.build();
+    /**
+     * The local path of {@code filePath}, or null for stdout and for other schemes than {@code file}.
+     */
+    private static java.nio.file.Path localPath(String filePath) {
+        if (STDOUT.equals(filePath)) return null;
+        Path path = new Path(filePath);
+        String scheme = path.toUri().getScheme();
+        if (scheme != null && !"file".equals(scheme)) return null;
+        return scheme == null ? Paths.get(filePath) : Paths.get(path.toUri());
     }
 
-    private static void configureEncodings(ExampleParquetWriter.Builder builder, JSONArray encodings) {
+    private static void configureEncodings(ParquetWriter.Builder<?, ?> builder, JSONArray encodings) {
         if (encodings == null) return;
 
         for (int i = 0; i < encodings.length(); i++) {
@@ -203,17 +987,95 @@ public class GenerateParquet {
         }
     }
 
-    private static void configureBloomFilters(ExampleParquetWriter.Builder builder, String bloomFilterOption, JSONObject options) {
+    /**
+     * Enables bloom filters for all columns or for the listed ones. A listed column is a path or an
+     * object with the {@code column} path and its expected number of distinct values {@code ndv} (a
+     * number or {@code "estimate"}), false positive probability {@code fpp} and number of
+     * {@code candidates} of the adaptive filter.
+     */
+    private static void configureBloomFilters(ParquetWriter.Builder<?, ?> builder, JSONObject options, Map<String, Long> estimatedNdv) {
+        String bloomFilterOption = options.optString("bloomFilter", "none");
         if ("all".equalsIgnoreCase(bloomFilterOption)) {
             builder.withBloomFilterEnabled(true);
         } else if (!"none".equalsIgnoreCase(bloomFilterOption)) {
             JSONArray bloomFilterColumns = options.optJSONArray("bloomFilter");
             if (bloomFilterColumns != null) {
                 for (int i = 0; i < bloomFilterColumns.length(); i++) {
-                    builder.withBloomFilterEnabled(bloomFilterColumns.getString(i), true);
+                    JSONObject column = bloomFilterColumns.optJSONObject(i);
+                    if (column == null) {
+                        builder.withBloomFilterEnabled(bloomFilterColumns.getString(i), true);
+                        continue;
+                    }
+                    String path = column.getString("column");
+                    builder.withBloomFilterEnabled(path, true);
+                    if (column.has("ndv")) {
+                        long ndv = "estimate".equals(column.get("ndv")) ? estimatedNdv.get(path) : column.getLong("ndv");
+                        builder.withBloomFilterNDV(path, Math.max(ndv, 1));
+                    }
+                    if (column.has("fpp")) {
+                        builder.withBloomFilterFPP(path, column.getDouble("fpp"));
+                    }
+                    if (column.has("candidates")) {
+                        builder.withBloomFilterCandidateNumber(path, column.getInt("candidates"));
+                    }
                 }
             }
         }
+        if (options.has("bloomFilterMaxBytes")) {
+            builder.withMaxBloomFilterBytes(intSizeOption(options, "bloomFilterMaxBytes", 0));
+        }
+        if (options.optBoolean("adaptiveBloomFilter", false)) {
+            builder.withAdaptiveBloomFilterEnabled(true);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values of the columns whose bloom filter has
+     * {@code "ndv": "estimate"}, over the rows of the file, by reading their values once before the
+     * file is written. Only top-level columns can be estimated.
+     */
+    private static Map<String, Long> estimateBloomFilterNdv(Definition definition, JSONObject options, long numRows, int partition,
+                                                           int partitions, boolean hash) throws IOException {
+        Map<String, Long> estimates = new HashMap<>();
+        JSONArray bloomFilterColumns = options.optJSONArray("bloomFilter");
+        if (bloomFilterColumns == null) return estimates;
+        JSONArray schemaArray = definition.getSchema();
+        long seed = definition.getConfig().optLong("seed", 0);
+        for (int i = 0; i < bloomFilterColumns.length(); i++) {
+            JSONObject column = bloomFilterColumns.optJSONObject(i);
+            if (column == null || !"estimate".equals(column.opt("ndv"))) continue;
+            String path = column.getString("column");
+            int index = -1;
+            for (int f = 0; f < schemaArray.length(); f++) {
+                if (path.equals(schemaArray.getJSONObject(f).getString("name"))) index = f;
+            }
+            ColumnValues values = index < 0 ? null : openColumn(definition, index, seed);
+            if (values == null) {
+                throw new IllegalArgumentException("NDV can only be estimated for top-level columns with data, a source or a generator: " + path);
+            }
+
+            DistinctCounter counter = new DistinctCounter();
+            try (ColumnValues columnValues = values) {
+                long start = hash ? 0 : partitionStart(numRows, partition, partitions);
+                long end = hash ? numRows : partitionStart(numRows, partition + 1, partitions);
+                columnValues.skip(start);
+                long skipped = 0;
+                for (long row = start; row < end; row++) {
+                    if (hash && Math.floorMod(ColumnGenerator.mix(row), partitions) != partition) {
+                        skipped++;
+                        continue;
+                    }
+                    if (skipped > 0) {
+                        columnValues.skip(skipped);
+                        skipped = 0;
+                    }
+                    counter.add(columnValues.next());
+                }
+            }
+            estimates.put(path, counter.estimate());
+            System.out.println("Estimated distinct values of " + path + ": " + estimates.get(path));
+        }
+        return estimates;
     }
 
     private static MessageType buildSchema(JSONArray schemaArray) {
@@ -399,85 +1261,147 @@ public class GenerateParquet {
         }
     }
 
-    private static void writeData(ParquetWriter<Group> writer, SimpleGroupFactory groupFactory, JSONArray schemaArray) throws IOException {
-        int numRows = calculateNumRows(schemaArray);
-        System.out.println("Number of rows to write: " + numRows);
-        for (int i = 0; i < numRows; i++) {
-            Group group = groupFactory.newGroup();
-            insertDataIntoGroup(group, schemaArray, i);
-            writer.write(group);
+    /**
+     * Writes the rows of one partition out of {@code partitions}: either a contiguous slice of the row
+     * range or, with {@code hash}, the rows whose hashed index falls into it. Rows of other partitions
+     * are skipped, so every partition sees the same values as an unpartitioned file.
+     * <p>
+     * With {@code options.pipelineThreads}, column values are produced on that many worker threads
+     * while this thread encodes and compresses the previous ones. With a {@code sorter}, the rows of the
+     * partition are collected and sorted before the first one is written.
+     */
+    private static long writeRows(ParquetWriter<WritePlan> writer, MessageType schema, Definition definition, JSONObject options,
+                                  RowSorter sorter, WriteMetrics metrics, WriteMetrics.FileMetrics fileMetrics, long numRows,
+                                  int partition, int partitions, boolean hash) throws IOException {
+        long start = hash ? 0 : partitionStart(numRows, partition, partitions);
+        long end = hash ? numRows : partitionStart(numRows, partition + 1, partitions);
+        int pipelineThreads = options.optInt("pipelineThreads", 0);
+        ExecutorService pipeline = pipelineThreads > 0 ? Executors.newFixedThreadPool(pipelineThreads) : null;
+        ColumnValues[] columns = openColumns(definition);
+        long written = 0;
+        try {
+            skipRows(columns, start);
+            if (pipeline != null) {
+                columns = ColumnPrefetcher.wrap(columns, end - start, pipeline);
+            }
+            if (sorter != null) {
+                LongPredicate selected = hash ? row -> Math.floorMod(ColumnGenerator.mix(row), partitions) == partition : row -> true;
+                end = sorter.sort(columns, hash ? numRows : end - start, selected);
+                start = 0;
+            }
+            WritePlan plan = new WritePlan(schema, columns);
+            if (metrics.isColumnTiming()) {
+                String[] columnNames = plan.getColumnNames();
+                plan.enableTiming(nanos -> fileMetrics.encodedRowGroup(columnNames, nanos));
+            }
+            if (hash && sorter == null) {
+                long skipped = 0;
+                for (long row = 0; row < numRows; row++) {
+                    if (Math.floorMod(ColumnGenerator.mix(row), partitions) != partition) {
+                        skipped++;
+                        continue;
+                    }
+                    if (skipped > 0) {
+                        skipRows(columns, skipped);
+                        skipped = 0;
+                    }
+                    writer.write(plan);
+                    written++;
+                }
+            } else {
+                for (long row = start; row < end; row++) {
+                    writer.write(plan);
+                }
+                written = end - start;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            closeColumns(columns);
+            if (pipeline != null) {
+                pipeline.shutdownNow();
+            }
         }
-        System.out.println("Data written successfully");
+        return written;
+    }
 
+    private static long partitionStart(long numRows, int partition, int partitions) {
+        return numRows / partitions * partition + Math.min(partition, numRows % partitions);
     }
 
-    private static int calculateNumRows(JSONArray schemaArray) {
-        int numRows = Integer.MAX_VALUE;
+    private static void skipRows(ColumnValues[] columns, long rows) throws IOException {
+        for (ColumnValues column : columns) {
+            if (column != null) {
+                column.skip(rows);
+            }
+        }
+    }
+
+    private static long calculateNumRows(Definition definition) throws IOException {
+        JSONObject configJson = definition.getConfig();
+        JSONArray schemaArray = definition.getSchema();
+        long numRows = configJson.has("rows") ? configJson.getLong("rows") : Long.MAX_VALUE;
+        boolean hasGenerators = false;
         for (int i = 0; i < schemaArray.length(); i++) {
-            int currentLength = schemaArray.getJSONObject(i).optJSONArray("data") != null ? schemaArray.getJSONObject(i).getJSONArray("data").length() : 0;
+            long currentLength = definition.hasData(i) ? definition.getDataLength(i) : 0;
             if (currentLength > 0 && currentLength < numRows) {
                 numRows = currentLength;
             }
+            hasGenerators |= schemaArray.getJSONObject(i).has("generator");
+        }
+        if (numRows == Long.MAX_VALUE) {
+            if (hasGenerators) {
+                throw new IllegalArgumentException("'rows' must be set when no column has inline data");
+            }
+            return 0;
         }
         return numRows;
     }
 
-    private static void insertDataIntoGroup(Group group, JSONArray schemaArray, int rowIndex) {
-        for (int i = 0; i < schemaArray.length(); i++) {
-            JSONObject field = schemaArray.getJSONObject(i);
-            String fieldPhysicalType = field.optString("physicalType", null);
-            String fieldLogicalType = field.optString("logicalType", "NONE");
-
-
-            if (!field.has("data")) {
-                // Handle nested groups
-                String name = field.getString("name");
-                Group nestedGroup = group.addGroup(name);
-                JSONArray groupDataArray = field.getJSONArray("data");
-                JSONObject groupData = groupDataArray.getJSONObject(rowIndex);
-                JSONArray fields = field.getJSONArray("fields");
-                for (int j = 0; j < fields.length(); j++) {
-                    JSONObject nestedField = fields.getJSONObject(j);
-                    String nestedFieldName = nestedField.getString("name");
-                    Object nestedValue = groupData.get(nestedFieldName);
-                    boolean isUUID = false;
-
-                    if ("INT64".equals(fieldPhysicalType)) {
-                        nestedValue = ((Number) nestedValue).longValue();
-                    }
-
-
-                    if ((fieldLogicalType).equalsIgnoreCase("uuid")) {
-                        isUUID = true;
-                    }
-
-                    if ("FLOAT16".equalsIgnoreCase(fieldLogicalType)) {
-                        nestedValue = encodeFloat16ToBytes(nestedValue);
-                    }
-
-                    appendValueToGroup(nestedGroup, nestedFieldName, nestedValue, isUUID);
-                }
-            } else {
-                String name = field.getString("name");
-                JSONArray dataArray = field.getJSONArray("data");
-                Object value = dataArray.get(rowIndex);
-                boolean isUUID = false;
-
-                if ("INT64".equals(fieldPhysicalType)) {
-                    value = ((Number) value).longValue();
-                }
-
-                if ((fieldLogicalType).equalsIgnoreCase("uuid")) {
-                    isUUID = true;
+    private static ColumnValues[] openColumns(Definition definition) throws IOException {
+        JSONArray schemaArray = definition.getSchema();
+        long seed = definition.getConfig().optLong("seed", 0);
+        ColumnValues[] columns = new ColumnValues[schemaArray.length()];
+        int[] dataColumns = IntStream.range(0, columns.length).filter(definition::hasData).toArray();
+        ColumnValues[] data = definition.openData(dataColumns);
+        for (int i = 0; i < dataColumns.length; i++) {
+            columns[dataColumns[i]] = data[i];
+        }
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == null) {
+                    columns[i] = openColumn(definition, i, seed);
                 }
+            }
+        } catch (IOException | RuntimeException e) {
+            closeColumns(columns);
+            throw e;
+        }
+        return columns;
+    }
 
-                if ("FLOAT16".equalsIgnoreCase(fieldLogicalType)) {
-                    value = encodeFloat16ToBytes(value);
-                }
+    /**
+     * Opens the values of a top-level column, or returns null when it has neither data nor a generator.
+     */
+    private static ColumnValues openColumn(Definition definition, int column, long seed) throws IOException {
+        if (definition.hasData(column)) {
+            return definition.openData(column);
+        }
+        JSONObject field = definition.getSchema().getJSONObject(column);
+        return field.has("generator") ? new ColumnGenerator(field, seed) : null;
+    }
 
-                appendValueToGroup(group, name, value, isUUID);
+    private static void closeColumns(ColumnValues[] columns) throws IOException {
+        IOException failure = null;
+        for (ColumnValues column : columns) {
+            if (column == null) continue;
+            try {
+                column.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
             }
         }
+        if (failure != null) throw failure;
     }
 
     public static int encodeFloat16ToInt(float floatValue) {
@@ -527,63 +1451,7 @@ public class GenerateParquet {
         return encodeFloat16ToBytes(floatValue);
     }
 
-    private static void appendValueToGroup(Group group, String name, Object value, Boolean isUUID) {
-        try {
-            if (value instanceof Integer) {
-                group.add(name, (Integer) value);
-            } else if (value instanceof Long) {
-                group.add(name, (Long) value);
-            } else if (value instanceof String) {
-                // Handle UUID string by converting to 16-byte array if the field is UUID
-                if (isUUID) {
-                    byte[] uuidBytes = hexStringToByteArray((String) value);
-                    group.add(name, Binary.fromConstantByteArray(uuidBytes));
-                } else {
-                    group.add(name, (String) value);
-                }
-            } else if (value instanceof Boolean) {
-                group.add(name, (Boolean) value);
-            } else if (value instanceof Double) {
-                group.add(name, (Double) value);
-            } else if (value instanceof Float) {
-                group.add(name, (Float) value);
-            } else if (value instanceof BigDecimal) {
-                BigDecimal decimalValue = (BigDecimal) value;
-                byte[] bytes = decimalValue.unscaledValue().toByteArray();
-                group.add(name, Binary.fromConstantByteArray(bytes));
-            } else if (value instanceof byte[]) {
-                group.add(name, Binary.fromConstantByteArray((byte[]) value));
-            } else if (value instanceof JSONObject) {
-                Group nestedGroup = group.addGroup(name);
-                JSONObject jsonObject = (JSONObject) value;
-                for (String key : jsonObject.keySet()) {
-                    Object nestedValue = jsonObject.get(key);
-                    appendValueToGroup(nestedGroup, key, nestedValue, isUUID);
-                }
-            } else if (value instanceof JSONArray) {
-                JSONArray jsonArray = (JSONArray) value;
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Object arrayValue = jsonArray.get(i);
-                    if (arrayValue instanceof JSONObject) {
-                        JSONObject keyValue = (JSONObject) arrayValue;
-                        Group keyValueGroup = group.addGroup(name);
-                        for (String key : keyValue.keySet()) {
-                            Object nestedValue = keyValue.get(key);
-                            appendValueToGroup(keyValueGroup, key, nestedValue, isUUID);
-                        }
-                    } else {
-                        appendValueToGroup(group.addGroup(name), "element", arrayValue, isUUID);
-                    }
-                }
-            } else {
-                throw new IllegalArgumentException("Unsupported data type: " + value.getClass().getName());
-            }
-        } catch (ClassCastException e) {
-            throw new IllegalArgumentException("Error adding value to group. Value type mismatch for column: " + name, e);
-        }
-    }
-
-    private static byte[] hexStringToByteArray(String s) {
+    static byte[] hexStringToByteArray(String s) {
         int len = s.length();
         byte[] data = new byte[len / 2];
         for (int i = 0; i < len; i += 2) {
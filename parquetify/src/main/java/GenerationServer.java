@@ -0,0 +1,126 @@
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves {@code --serve} mode: reads generation requests from a stream, one JSON object per line,
+ * generates them on a pool of workers and writes one JSON response line per request as soon as it
+ * finishes, so responses may come back in a different order than the requests.
+ * <p>
+ * A request names a definition file with {@code json} or carries the definition itself in
+ * {@code definition}, and may set its own {@code output} directory, {@code parallelism} and
+ * {@code metrics} flag. The response is the {@code --metrics} report of the definition with the
+ * {@code id} of the request and a {@code status} of {@code ok} or {@code error}; the per-file and
+ * per-column details are only included when the request asks for {@code metrics}.
+ */
+final class GenerationServer {
+
+    private final GenerateParquet.GenerationContext context;
+    private final String defaultOutput;
+    private final int defaultParallelism;
+    private final ExecutorService pool;
+    private final PrintStream responses;
+
+    GenerationServer(GenerateParquet.GenerationContext context, String defaultOutput, int defaultParallelism, int threads,
+                     PrintStream responses) {
+        this.context = context;
+        this.defaultOutput = defaultOutput;
+        this.defaultParallelism = defaultParallelism;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.responses = responses;
+    }
+
+    /**
+     * Handles requests until the end of {@code requests}, then waits for the pending ones.
+     */
+    void serve(InputStream requests) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(requests, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                JSONObject request;
+                try {
+                    request = new JSONObject(line);
+                } catch (JSONException e) {
+                    respond(error(null, "Invalid request: " + e.getMessage()));
+                    continue;
+                }
+                pool.execute(() -> respond(handle(request)));
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private JSONObject handle(JSONObject request) {
+        Object id = request.opt("id");
+        try {
+            String output = request.optString("output", defaultOutput);
+            if (output == null) {
+                return error(id, "Request has no output and no default --output is set");
+            }
+            if (GenerateParquet.STDOUT.equals(output)) {
+                return error(id, "Output - is not available in serve mode, stdout carries the responses");
+            }
+            int parallelism = request.optInt("parallelism", defaultParallelism);
+            boolean details = request.optBoolean("metrics", false);
+
+            String label;
+            GenerateParquet.DefinitionSource source;
+            if (request.has("definition")) {
+                byte[] content = request.getJSONObject("definition").toString().getBytes(StandardCharsets.UTF_8);
+                label = id == null ? "request" : "request " + id;
+                source = () -> Definition.read(content);
+            } else if (request.has("json")) {
+                Path path = Paths.get(request.getString("json"));
+                label = path.toString();
+                source = () -> Definition.read(path);
+            } else {
+                return error(id, "Request has neither a definition nor a json path");
+            }
+
+            GenerateParquet.GenerationResult result = GenerateParquet.generate(label, source, output, context, parallelism, details);
+            JSONObject response = result.metrics.toJson();
+            if (!details) {
+                response.remove("files");
+                response.remove("columns");
+            }
+            response.put("id", id == null ? JSONObject.NULL : id);
+            response.put("status", result.isSuccess() ? "ok" : "error");
+            return response;
+        } catch (RuntimeException e) {
+            return error(id, e.getMessage());
+        }
+    }
+
+    private static JSONObject error(Object id, String message) {
+        JSONObject response = new JSONObject();
+        response.put("id", id == null ? JSONObject.NULL : id);
+        response.put("status", "error");
+        response.put("error", String.valueOf(message));
+        return response;
+    }
+
+    private synchronized void respond(JSONObject response) {
+        responses.println(response);
+        responses.flush();
+    }
+}
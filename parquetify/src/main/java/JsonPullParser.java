@@ -0,0 +1,382 @@
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Token-level JSON reader working directly on the bytes of a definition file.
+ * <p>
+ * Unlike {@link org.json.JSONTokener} it keeps track of the byte offset of every token, so the
+ * caller can remember where a large array starts and come back to it later with a fresh parser.
+ * Scalars are converted with {@link JSONObject#stringToValue(String)} so that values come out with
+ * the same Java types as when the whole document is parsed by {@link JSONObject}.
+ */
+final class JsonPullParser implements Closeable {
+
+    enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, VALUE
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int bufferPos;
+    private int bufferLimit;
+    private long bufferStart;
+
+    // Nesting state: true for objects, false for arrays
+    private boolean[] containers = new boolean[32];
+    private int depth;
+    private boolean expectingName;
+    // The separator owed before the next token: ':' after a field name, ',' or the closing bracket
+    // after a value
+    private boolean afterName;
+    private boolean afterValue;
+
+    private Token token;
+    private long tokenStart;
+    private String name;
+    private Object value;
+
+    private final StringBuilder text = new StringBuilder();
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+
+    JsonPullParser(InputStream in) {
+        this(in, 0, DEFAULT_BUFFER_SIZE);
+    }
+
+    JsonPullParser(InputStream in, long startOffset) {
+        this(in, startOffset, DEFAULT_BUFFER_SIZE);
+    }
+
+    JsonPullParser(InputStream in, long startOffset, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.bufferStart = startOffset;
+    }
+
+    /**
+     * Advances to the next token. Returns {@code null} at the end of the input.
+     */
+    Token next() throws IOException {
+        int c = nextSignificant();
+        if (c >= 0 && afterName) {
+            if (c != ':') {
+                throw syntaxErrorHere("Expected ':' after a field name");
+            }
+            afterName = false;
+            c = nextSignificant();
+            if (c == '}' || c == ']') {
+                throw syntaxErrorHere("Missing value");
+            }
+        } else if (c >= 0 && afterValue && depth > 0) {
+            if (c == ',') {
+                // A ',' before the closing bracket is accepted, as JSONObject does
+                c = nextSignificant();
+            } else if (c != closing(depth - 1)) {
+                throw syntaxErrorHere("Expected ',' or '" + (char) closing(depth - 1) + "'");
+            }
+        }
+        afterValue = false;
+        if (c < 0) {
+            token = null;
+            return null;
+        }
+        tokenStart = position() - 1;
+        switch (c) {
+            case ',':
+            case ':':
+                throw syntaxError("Unexpected '" + (char) c + "'");
+            case '{':
+                push(true);
+                expectingName = true;
+                return token = Token.START_OBJECT;
+            case '[':
+                push(false);
+                expectingName = false;
+                return token = Token.START_ARRAY;
+            case '}':
+            case ']':
+                if (depth == 0 || c != closing(depth - 1)) {
+                    throw syntaxError("Unexpected '" + (char) c + "'");
+                }
+                depth--;
+                afterValue();
+                return token = c == '}' ? Token.END_OBJECT : Token.END_ARRAY;
+            case '"':
+                String string = readString();
+                if (expectingName) {
+                    expectingName = false;
+                    afterName = true;
+                    name = string;
+                    return token = Token.FIELD_NAME;
+                }
+                value = string;
+                afterValue();
+                return token = Token.VALUE;
+            default:
+                value = JSONObject.stringToValue(readLiteral(c));
+                afterValue();
+                return token = Token.VALUE;
+        }
+    }
+
+    Token currentToken() {
+        return token;
+    }
+
+    /**
+     * Byte offset of the first character of the current token.
+     */
+    long tokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Name of the current {@link Token#FIELD_NAME} token.
+     */
+    String currentName() {
+        return name;
+    }
+
+    /**
+     * Value of the current {@link Token#VALUE} token.
+     */
+    Object currentValue() {
+        return value;
+    }
+
+    /**
+     * Skips the remainder of the object or array opened by the current token. Does nothing for
+     * scalar tokens.
+     */
+    void skipChildren() throws IOException {
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) {
+            return;
+        }
+        int target = depth - 1;
+        while (depth > target) {
+            if (next() == null) {
+                throw syntaxError("Unexpected end of input");
+            }
+        }
+    }
+
+    /**
+     * Moves forward to {@code offset}, the start of a later element of the array the parser is in, as
+     * found by {@link #tokenStart()} in an earlier pass over the same bytes, without reading the
+     * elements in between.
+     */
+    void skipTo(long offset) throws IOException {
+        long ahead = offset - position();
+        if (ahead < 0) {
+            throw new IllegalArgumentException("Can not skip back to byte " + offset + " from byte " + position());
+        }
+        if (ahead <= bufferLimit - bufferPos) {
+            bufferPos += (int) ahead;
+        } else {
+            long remaining = offset - (bufferStart + bufferLimit);
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("Unexpected end of input before byte " + offset);
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            bufferStart = offset;
+            bufferPos = 0;
+            bufferLimit = 0;
+        }
+        // The ',' in front of the element is skipped with the rest
+        afterValue = false;
+    }
+
+    /**
+     * Materializes the value starting at the current token as a {@link JSONObject}, {@link JSONArray}
+     * or scalar, leaving the parser on the last token of that value.
+     */
+    Object readValue() throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                JSONObject object = new JSONObject();
+                while (next() != Token.END_OBJECT) {
+                    String key = expect(Token.FIELD_NAME).currentName();
+                    next();
+                    object.put(key, readValue());
+                }
+                return object;
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (next() != Token.END_ARRAY) {
+                    array.put(readValue());
+                }
+                return array;
+            case VALUE:
+                return value;
+            default:
+                throw syntaxError("Unexpected token " + token);
+        }
+    }
+
+    JsonPullParser expect(Token expected) {
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but found " + token);
+        }
+        return this;
+    }
+
+    JSONException syntaxError(String message) {
+        return new JSONException(message + " at byte " + tokenStart);
+    }
+
+    // For errors on the character just read, before it starts a token
+    private JSONException syntaxErrorHere(String message) {
+        tokenStart = position() - 1;
+        return syntaxError(message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void push(boolean object) {
+        if (depth == containers.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(containers, 0, grown, 0, depth);
+            containers = grown;
+        }
+        containers[depth++] = object;
+    }
+
+    private void afterValue() {
+        expectingName = depth > 0 && containers[depth - 1];
+        afterValue = true;
+    }
+
+    private int closing(int level) {
+        return containers[level] ? '}' : ']';
+    }
+
+    private long position() {
+        return bufferStart + bufferPos;
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLimit) {
+            bufferStart += bufferLimit;
+            bufferPos = 0;
+            bufferLimit = 0;
+            int n = in.read(buffer);
+            if (n <= 0) {
+                return -1;
+            }
+            bufferLimit = n;
+        }
+        return buffer[bufferPos++] & 0xff;
+    }
+
+    private void unread() {
+        bufferPos--;
+    }
+
+    private int nextSignificant() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private String readLiteral(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == ',' || c == ':' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                unread();
+                break;
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        raw.reset();
+        while (true) {
+            int c = read();
+            switch (c) {
+                case -1:
+                    throw syntaxError("Unterminated string");
+                case '"':
+                    flushRaw();
+                    return text.toString();
+                case '\\':
+                    flushRaw();
+                    readEscape();
+                    break;
+                default:
+                    raw.write(c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                text.append('\b');
+                break;
+            case 't':
+                text.append('\t');
+                break;
+            case 'n':
+                text.append('\n');
+                break;
+            case 'f':
+                text.append('\f');
+                break;
+            case 'r':
+                text.append('\r');
+                break;
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                text.append((char) code);
+                break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                text.append((char) c);
+                break;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    private void flushRaw() {
+        if (raw.size() > 0) {
+            text.append(raw.toString(StandardCharsets.UTF_8));
+            raw.reset();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link OutputFile} for local paths that writes through a {@link FileChannel} and a direct buffer,
+ * instead of Hadoop's checksummed {@code LocalFileSystem} and its {@code .crc} side files.
+ */
+final class NioOutputFile implements OutputFile {
+
+    static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final Path path;
+    private final int bufferSize;
+    private final boolean fsync;
+
+    /**
+     * @param fsync whether the file is forced to the storage device when the stream is closed
+     */
+    NioOutputFile(Path path, int bufferSize, boolean fsync) {
+        this.path = path;
+        this.bufferSize = bufferSize;
+        this.fsync = fsync;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) throws IOException {
+        return open(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+        // A checksum left by an earlier write through Hadoop would no longer match the new content
+        Path fileName = path.getFileName();
+        if (fileName != null) {
+            Files.deleteIfExists(path.resolveSibling("." + fileName + ".crc"));
+        }
+        // Replace the file instead of truncating it, which would also change its hard links in the cache
+        Files.deleteIfExists(path);
+        return open(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    @Override
+    public String getPath() {
+        return path.toString();
+    }
+
+    private PositionOutputStream open(OpenOption... options) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return new ChannelOutputStream(FileChannel.open(path, options), bufferSize, fsync);
+    }
+
+    private static final class ChannelOutputStream extends PositionOutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean fsync;
+        private long position;
+        private boolean closed;
+
+        ChannelOutputStream(FileChannel channel, int bufferSize, boolean fsync) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            this.fsync = fsync;
+        }
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.remaining()) {
+                drain();
+                if (length >= buffer.capacity()) {
+                    // Large pages go straight to the channel instead of being copied through the buffer
+                    writeFully(ByteBuffer.wrap(bytes, offset, length));
+                    position += length;
+                    return;
+                }
+            }
+            buffer.put(bytes, offset, length);
+            position += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                drain();
+                if (fsync) {
+                    channel.force(true);
+                }
+            } catch (IOException | RuntimeException e) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            channel.close();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Concatenates Parquet files with the same schema into one file for {@code --merge}, copying the
+ * column chunks of every row group byte for byte together with their bloom filters, column indexes
+ * and offset indexes, so nothing is decoded or compressed again.
+ * <p>
+ * The key-value metadata of the inputs is combined; when inputs disagree on a key, the value of the
+ * first one is kept.
+ */
+final class ParquetMerger {
+
+    private ParquetMerger() {
+    }
+
+    /**
+     * Merges {@code inputs}, in order, into {@code output}. Returns the number of rows written.
+     */
+    static long merge(List<InputFile> inputs, OutputFile output) throws IOException {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to merge");
+        }
+        MessageType schema;
+        try (ParquetFileReader first = ParquetFileReader.open(inputs.get(0))) {
+            schema = first.getFileMetaData().getSchema();
+        }
+
+        ParquetFileWriter writer = new ParquetFileWriter(output, schema, ParquetFileWriter.Mode.OVERWRITE,
+                ParquetWriter.DEFAULT_BLOCK_SIZE, 0, null, ParquetProperties.builder().build());
+        try {
+            return append(inputs, schema, writer);
+        } catch (IOException | RuntimeException e) {
+            // end() closes the output once the footer is written; it is left open by any failure before
+            try {
+                writer.close();
+            } catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the file, copies the row groups of every input and ends it with the combined footer.
+     */
+    private static long append(List<InputFile> inputs, MessageType schema, ParquetFileWriter writer) throws IOException {
+        writer.start();
+        Map<String, String> keyValueMetaData = new LinkedHashMap<>();
+        long rows = 0;
+        for (InputFile input : inputs) {
+            try (ParquetFileReader reader = ParquetFileReader.open(input);
+                 SeekableInputStream in = input.newStream()) {
+                MessageType inputSchema = reader.getFileMetaData().getSchema();
+                if (!inputSchema.getFields().equals(schema.getFields())) {
+                    throw new IllegalArgumentException("Schema of " + input + " differs from the schema of " + inputs.get(0)
+                            + ":\n" + inputSchema + "\n" + schema);
+                }
+                for (Map.Entry<String, String> entry : reader.getFileMetaData().getKeyValueMetaData().entrySet()) {
+                    String previous = keyValueMetaData.putIfAbsent(entry.getKey(), entry.getValue());
+                    if (previous != null && !previous.equals(entry.getValue())) {
+                        System.err.println("Keeping " + entry.getKey() + "=" + previous + ", " + input + " has " + entry.getValue());
+                    }
+                }
+                for (BlockMetaData block : reader.getRowGroups()) {
+                    writer.startBlock(block.getRowCount());
+                    for (ColumnChunkMetaData chunk : block.getColumns()) {
+                        ColumnDescriptor descriptor = schema.getColumnDescription(chunk.getPath().toArray());
+                        writer.appendColumnChunk(descriptor, in, chunk, reader.readBloomFilter(chunk),
+                                reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                    }
+                    writer.endBlock();
+                    rows += block.getRowCount();
+                }
+            }
+        }
+        writer.end(keyValueMetaData);
+        return rows;
+    }
+}
@@ -0,0 +1,179 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.example.GroupWriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.HashMap;
+
+/**
+ * {@link WriteSupport} that shreds the rows of a {@link WritePlan} directly into the
+ * {@link RecordConsumer}, without building an intermediate {@link Group} per row.
+ */
+final class PlanWriteSupport extends WriteSupport<WritePlan> {
+
+    // Same object model name as GroupWriteSupport, so footers of generated files do not change
+    private static final String OBJECT_MODEL_NAME = "example";
+
+    private final MessageType schema;
+    private final FileVerifier verifier;
+    private RecordConsumer recordConsumer;
+    // The plan of the rows written so far, told when they are flushed as a row group
+    private WritePlan plan;
+
+    PlanWriteSupport(MessageType schema, FileVerifier verifier) {
+        this.schema = schema;
+        this.verifier = verifier;
+    }
+
+    static Builder builder(OutputFile file) {
+        return new Builder(file);
+    }
+
+    @Override
+    public String getName() {
+        return OBJECT_MODEL_NAME;
+    }
+
+    @Override
+    public WriteContext init(ParquetConfiguration configuration) {
+        return new WriteContext(schema, new HashMap<>());
+    }
+
+    @Override
+    @Deprecated
+    public WriteContext init(Configuration configuration) {
+        return init(new HadoopParquetConfiguration(configuration));
+    }
+
+    /**
+     * Called with a new record consumer for every row group; the writer has then flushed the previous one.
+     */
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        if (plan != null) {
+            plan.endRowGroup();
+        }
+        this.recordConsumer = verifier != null ? verifier.record(recordConsumer) : recordConsumer;
+    }
+
+    @Override
+    public void write(WritePlan plan) {
+        this.plan = plan;
+        recordConsumer.startMessage();
+        plan.writeRow(recordConsumer);
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * Called when the writer is closed, after it has flushed the last row group.
+     */
+    @Override
+    public FinalizedWriteContext finalizeWrite() {
+        if (plan != null) {
+            plan.endRowGroup();
+        }
+        return super.finalizeWrite();
+    }
+
+    /**
+     * Fallback that builds a {@link Group} for every row and writes it with {@link GroupWriteSupport}.
+     */
+    private static final class GroupPlanWriteSupport extends WriteSupport<WritePlan> {
+        private final GroupWriteSupport delegate = new GroupWriteSupport();
+        private final FileVerifier verifier;
+        private SimpleGroupFactory groupFactory;
+
+        GroupPlanWriteSupport(FileVerifier verifier) {
+            this.verifier = verifier;
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public WriteContext init(ParquetConfiguration configuration) {
+            WriteContext context = delegate.init(configuration);
+            groupFactory = new SimpleGroupFactory(context.getSchema());
+            return context;
+        }
+
+        @Override
+        @Deprecated
+        public WriteContext init(Configuration configuration) {
+            return init(new HadoopParquetConfiguration(configuration));
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            delegate.prepareForWrite(verifier != null ? verifier.record(recordConsumer) : recordConsumer);
+        }
+
+        @Override
+        public void write(WritePlan plan) {
+            Group group = groupFactory.newGroup();
+            plan.writeRow(group);
+            delegate.write(group);
+        }
+    }
+
+    static final class Builder extends ParquetWriter.Builder<WritePlan, Builder> {
+        private MessageType schema;
+        private boolean groupWriteSupport;
+        private FileVerifier verifier;
+
+        private Builder(OutputFile file) {
+            super(file);
+        }
+
+        Builder withSchema(MessageType schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        /**
+         * Writes rows through {@link GroupWriteSupport} instead of the direct record consumer path.
+         */
+        Builder withGroupWriteSupport(boolean groupWriteSupport) {
+            this.groupWriteSupport = groupWriteSupport;
+            return this;
+        }
+
+        /**
+         * Records the written values in {@code verifier}, to check the file once it is closed.
+         */
+        Builder withVerifier(FileVerifier verifier) {
+            this.verifier = verifier;
+            return this;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<WritePlan> getWriteSupport(ParquetConfiguration conf) {
+            if (groupWriteSupport) {
+                // What GroupWriteSupport.setSchema does, which only takes a Hadoop Configuration
+                conf.set(GroupWriteSupport.PARQUET_EXAMPLE_SCHEMA, schema.toString());
+                return new GroupPlanWriteSupport(verifier);
+            }
+            return new PlanWriteSupport(schema, verifier);
+        }
+
+        @Override
+        @Deprecated
+        protected WriteSupport<WritePlan> getWriteSupport(Configuration conf) {
+            return getWriteSupport(new HadoopParquetConfiguration(conf));
+        }
+    }
+}
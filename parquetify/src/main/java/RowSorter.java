@@ -0,0 +1,176 @@
+import org.apache.parquet.format.SortingColumn;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveComparator;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongPredicate;
+
+/**
+ * Orders the rows of a file by the top-level columns listed in {@code options.sortBy}, each a column
+ * name or an object with {@code column}, {@code descending} and {@code nullsFirst}.
+ * <p>
+ * The rows of the file are read into memory before the first one is written, so sorted files are
+ * limited by the heap. The sort is stable: rows with equal keys keep the order in which they were
+ * produced. Keys are compared as written, with the comparator Parquet uses for the statistics of
+ * their column: unsigned integers as unsigned, strings by their UTF-8 bytes. The order is recorded as
+ * the {@code sorting_columns} of every row group.
+ */
+final class RowSorter {
+
+    private final int[] fields;
+    private final int[] leaves;
+    private final PrimitiveType[] types;
+    private final boolean[] descending;
+    private final boolean[] nullsFirst;
+
+    private RowSorter(int keys) {
+        fields = new int[keys];
+        leaves = new int[keys];
+        types = new PrimitiveType[keys];
+        descending = new boolean[keys];
+        nullsFirst = new boolean[keys];
+    }
+
+    /**
+     * The sorter configured by {@code options.sortBy}, or null when rows are written as produced.
+     */
+    static RowSorter create(JSONObject options, MessageType schema) {
+        Object sortBy = options.opt("sortBy");
+        if (sortBy == null) return null;
+        JSONArray keys = sortBy instanceof JSONArray ? (JSONArray) sortBy : new JSONArray().put(sortBy);
+        if (keys.isEmpty()) return null;
+
+        RowSorter sorter = new RowSorter(keys.length());
+        for (int k = 0; k < keys.length(); k++) {
+            Object key = keys.get(k);
+            JSONObject spec = key instanceof JSONObject ? (JSONObject) key : new JSONObject().put("column", key);
+            String name = spec.getString("column");
+            if (!schema.containsField(name) || !schema.getType(name).isPrimitive()
+                    || schema.getType(name).isRepetition(Type.Repetition.REPEATED)) {
+                throw new IllegalArgumentException("sortBy column " + name + " must be a top-level non-repeated primitive column");
+            }
+            sorter.fields[k] = schema.getFieldIndex(name);
+            sorter.types[k] = schema.getType(name).asPrimitiveType();
+            sorter.leaves[k] = schema.getColumns().indexOf(schema.getColumnDescription(new String[]{name}));
+            sorter.descending[k] = spec.optBoolean("descending", false);
+            sorter.nullsFirst[k] = spec.optBoolean("nullsFirst", false);
+        }
+        return sorter;
+    }
+
+    /**
+     * Reads {@code rows} rows from {@code columns} and keeps those accepted by {@code selected}, then
+     * replaces every cursor of {@code columns} with one over the kept rows in sorted order. The replaced
+     * cursors are closed with the new ones. Returns the number of kept rows.
+     */
+    int sort(ColumnValues[] columns, long rows, LongPredicate selected) throws IOException {
+        List<Object[]> kept = new ArrayList<>();
+        long skipped = 0;
+        for (long row = 0; row < rows; row++) {
+            if (!selected.test(row)) {
+                skipped++;
+                continue;
+            }
+            if (skipped > 0) {
+                for (ColumnValues column : columns) {
+                    if (column != null) column.skip(skipped);
+                }
+                skipped = 0;
+            }
+            // The values of the row, followed by its keys as written
+            Object[] values = new Object[columns.length + fields.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null) values[i] = columns[i].next();
+            }
+            for (int k = 0; k < fields.length; k++) {
+                Object value = values[fields[k]];
+                boolean isNull = value == null || value == JSONObject.NULL;
+                values[columns.length + k] = isNull ? null : WritePlan.primitiveValue(types[k], value);
+            }
+            kept.add(values);
+        }
+
+        Object[][] sorted = kept.toArray(new Object[0][]);
+        Arrays.sort(sorted, comparator(columns.length));
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != null) {
+                columns[i] = new SortedColumn(sorted, i, columns[i]);
+            }
+        }
+        return sorted.length;
+    }
+
+    /**
+     * The {@code sorting_columns} of the row groups of a sorted file.
+     */
+    List<SortingColumn> sortingColumns() {
+        List<SortingColumn> sortingColumns = new ArrayList<>();
+        for (int k = 0; k < leaves.length; k++) {
+            sortingColumns.add(new SortingColumn(leaves[k], descending[k], nullsFirst[k]));
+        }
+        return sortingColumns;
+    }
+
+    private Comparator<Object[]> comparator(int keyOffset) {
+        List<PrimitiveComparator<Object>> comparators = new ArrayList<>();
+        for (PrimitiveType type : types) {
+            comparators.add(type.comparator());
+        }
+        return (a, b) -> {
+            for (int k = 0; k < comparators.size(); k++) {
+                Object x = a[keyOffset + k];
+                Object y = b[keyOffset + k];
+                int result;
+                if (x == null || y == null) {
+                    // Nulls are placed regardless of the direction of the key
+                    result = (x == null) == (y == null) ? 0 : ((x == null) == nullsFirst[k] ? -1 : 1);
+                } else {
+                    result = comparators.get(k).compare(x, y);
+                    if (descending[k]) result = -result;
+                }
+                if (result != 0) return result;
+            }
+            return 0;
+        };
+    }
+
+    private static final class SortedColumn implements ColumnValues {
+        private final Object[][] rows;
+        private final int field;
+        private final ColumnValues source;
+        private int position;
+
+        SortedColumn(Object[][] rows, int field, ColumnValues source) {
+            this.rows = rows;
+            this.field = field;
+            this.source = source;
+        }
+
+        @Override
+        public Object next() {
+            if (position == rows.length) {
+                throw new NoSuchElementException("No more sorted rows");
+            }
+            return rows[position++][field];
+        }
+
+        @Override
+        public void skip(long count) {
+            position = (int) Math.min(rows.length, position + count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Non-seekable {@link OutputFile} over an already open stream such as stdout or a pipe. The Parquet
+ * writer only appends and asks for the current position, which is tracked by counting bytes.
+ */
+final class StreamOutputFile implements OutputFile {
+
+    private final OutputStream out;
+    private final String name;
+    private final int bufferSize;
+    private boolean created;
+
+    StreamOutputFile(OutputStream out, String name, int bufferSize) {
+        this.out = out;
+        this.name = name;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+        if (created) {
+            throw new IllegalStateException("Stream " + name + " can only be written once");
+        }
+        created = true;
+        return new CountingOutputStream(new BufferedOutputStream(out, bufferSize));
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    @Override
+    public String getPath() {
+        return name;
+    }
+
+    private static final class CountingOutputStream extends PositionOutputStream {
+        private final OutputStream out;
+        private long position;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            position += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Timings and sizes collected while one definition is generated, reported as JSON with
+ * {@code --metrics}.
+ * <p>
+ * Phases of the definition are its parsing, building the schema, writing the rows and closing the
+ * writers, which flushes the last row group and the footer. Partitions are written concurrently, so
+ * their write and close times are summed. Row group and column chunk sizes come from the footer of
+ * every written file. The time spent encoding every top-level column is estimated by row group, see
+ * {@link WritePlan#enableTiming}, and summed by column. For encrypted files, the time the cipher of
+ * every column chunk takes is estimated by encrypting its pages again, reported by chunk and summed by
+ * column; see {@link FileEncryption#timeColumnCiphers}.
+ */
+final class WriteMetrics {
+
+    private final String definition;
+    private final boolean columnTiming;
+    private final List<FileMetrics> files = new ArrayList<>();
+    private String output;
+    private String cache;
+    private long parseNanos;
+    private long schemaNanos;
+    private long totalNanos;
+    private Throwable error;
+
+    /**
+     * @param columnTiming whether the time spent encoding every column is measured, which costs two
+     *                     clock reads per value of the timed rows
+     */
+    WriteMetrics(String definition, boolean columnTiming) {
+        this.definition = definition;
+        this.columnTiming = columnTiming;
+    }
+
+    boolean isColumnTiming() {
+        return columnTiming;
+    }
+
+    void setOutput(String output) {
+        this.output = output;
+    }
+
+    /**
+     * @param cache {@code hit} when the files were restored from the cache, {@code miss} otherwise
+     */
+    void setCache(String cache) {
+        this.cache = cache;
+    }
+
+    void setParseNanos(long nanos) {
+        parseNanos = nanos;
+    }
+
+    void addSchemaNanos(long nanos) {
+        schemaNanos += nanos;
+    }
+
+    void finish(long totalNanos, Throwable error) {
+        this.totalNanos = totalNanos;
+        this.error = error;
+    }
+
+    synchronized FileMetrics newFile(String path) {
+        FileMetrics file = new FileMetrics(path);
+        files.add(file);
+        return file;
+    }
+
+    synchronized JSONObject toJson() {
+        long rows = 0;
+        long bytes = 0;
+        long writeNanos = 0;
+        long closeNanos = 0;
+        long verifyNanos = -1;
+        Map<String, Long> encodeNanos = new LinkedHashMap<>();
+        Map<String, EncryptedColumn> encryptedColumns = new LinkedHashMap<>();
+        JSONArray fileArray = new JSONArray();
+        for (FileMetrics file : files) {
+            file.addEncodeNanos(encodeNanos);
+            file.addEncryptedColumns(encryptedColumns);
+            rows += file.rows;
+            bytes += file.bytes;
+            writeNanos += file.writeNanos;
+            closeNanos += file.closeNanos;
+            if (file.verifyNanos >= 0) {
+                verifyNanos = Math.max(verifyNanos, 0) + file.verifyNanos;
+            }
+            fileArray.put(file.toJson());
+        }
+
+        JSONObject timings = new JSONObject();
+        timings.put("parseMillis", millis(parseNanos));
+        timings.put("schemaMillis", millis(schemaNanos));
+        timings.put("writeMillis", millis(writeNanos));
+        timings.put("closeMillis", millis(closeNanos));
+        if (verifyNanos >= 0) {
+            timings.put("verifyMillis", millis(verifyNanos));
+        }
+        if (!encryptedColumns.isEmpty()) {
+            long encryptNanos = 0;
+            for (EncryptedColumn column : encryptedColumns.values()) {
+                encryptNanos += column.nanos;
+            }
+            timings.put("encryptMillis", millis(encryptNanos));
+        }
+        timings.put("totalMillis", millis(totalNanos));
+
+        JSONObject json = new JSONObject();
+        json.put("definition", definition);
+        json.put("output", output == null ? JSONObject.NULL : output);
+        json.put("success", error == null);
+        if (cache != null) {
+            json.put("cache", cache);
+        }
+        if (error != null) {
+            json.put("error", String.valueOf(error.getMessage()));
+        }
+        json.put("rows", rows);
+        json.put("bytes", bytes);
+        json.put("rowsPerSecond", totalNanos > 0 ? Math.round(rows * 1e9 / totalNanos) : 0);
+        json.put("timings", timings);
+        if (columnTiming) {
+            JSONArray columns = new JSONArray();
+            for (Map.Entry<String, Long> entry : encodeNanos.entrySet()) {
+                JSONObject column = new JSONObject();
+                column.put("name", entry.getKey());
+                column.put("encodeMillis", millis(entry.getValue()));
+                columns.put(column);
+            }
+            json.put("columns", columns);
+        }
+        if (!encryptedColumns.isEmpty()) {
+            JSONArray columns = new JSONArray();
+            for (EncryptedColumn column : encryptedColumns.values()) {
+                columns.put(column.toJson());
+            }
+            json.put("encryptedColumns", columns);
+        }
+        json.put("files", fileArray);
+        return json;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    /**
+     * Metrics of one written Parquet file.
+     */
+    static final class FileMetrics {
+        private final String path;
+        private long rows;
+        private long bytes;
+        private long writeNanos;
+        private long closeNanos;
+        private long verifyNanos = -1;
+        private ParquetMetadata footer;
+        private FileEncryption encryption;
+        // Estimated time taken by the cipher of every column chunk, by row group and column
+        private long[][] encryptNanos;
+        // Estimated time spent encoding every top-level column, by row group
+        private String[] encodedColumns;
+        private final List<long[]> encodeNanos = new ArrayList<>();
+
+        private FileMetrics(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Wraps the output file to count the bytes written to it, footer included.
+         */
+        OutputFile meter(OutputFile file) {
+            return new MeteredOutputFile(file, this);
+        }
+
+        void written(long rows, long writeNanos) {
+            this.rows = rows;
+            this.writeNanos = writeNanos;
+        }
+
+        /**
+         * Records the size of the file after its footer was rewritten.
+         */
+        void rewritten(long bytes) {
+            this.bytes = bytes;
+        }
+
+        void closed(long closeNanos, ParquetMetadata footer) {
+            this.closeNanos = closeNanos;
+            this.footer = footer;
+        }
+
+        /**
+         * Records the time spent reading the file back with {@code --verify}.
+         */
+        void verified(long verifyNanos) {
+            this.verifyNanos = verifyNanos;
+        }
+
+        /**
+         * Records the estimated time spent encoding every top-level column in the next row group.
+         */
+        void encodedRowGroup(String[] columns, long[] nanos) {
+            encodedColumns = columns;
+            encodeNanos.add(nanos);
+        }
+
+        /**
+         * Records the estimated cipher time of every column chunk of an encrypted file.
+         */
+        void encrypted(FileEncryption encryption, long[][] encryptNanos) {
+            this.encryption = encryption;
+            this.encryptNanos = encryptNanos;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Time spent writing the rows and closing the file.
+         */
+        long getWriteNanos() {
+            return writeNanos + closeNanos;
+        }
+
+        /**
+         * Uncompressed over compressed size of the row groups, or 0 before the file is closed.
+         */
+        double getCompressionRatio() {
+            long uncompressed = 0;
+            long compressed = 0;
+            if (footer != null) {
+                for (BlockMetaData block : footer.getBlocks()) {
+                    uncompressed += block.getTotalByteSize();
+                    compressed += block.getCompressedSize();
+                }
+            }
+            return compressed > 0 ? (double) uncompressed / compressed : 0;
+        }
+
+        private JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("path", path);
+            json.put("rows", rows);
+            json.put("bytes", bytes);
+            json.put("writeMillis", millis(writeNanos));
+            json.put("closeMillis", millis(closeNanos));
+            if (verifyNanos >= 0) {
+                json.put("verifyMillis", millis(verifyNanos));
+            }
+            if (encryption != null) {
+                json.put("encryption", new JSONObject()
+                        .put("algorithm", encryption.getAlgorithm().name())
+                        .put("plaintextFooter", encryption.isPlaintextFooter()));
+            }
+            JSONArray rowGroups = new JSONArray();
+            if (footer != null) {
+                List<BlockMetaData> blocks = footer.getBlocks();
+                for (int i = 0; i < blocks.size(); i++) {
+                    rowGroups.put(rowGroupJson(blocks.get(i), i));
+                }
+            }
+            json.put("rowGroups", rowGroups);
+            return json;
+        }
+
+        /**
+         * Adds the encode time of the row groups of this file to the totals of their top-level columns.
+         */
+        private void addEncodeNanos(Map<String, Long> columns) {
+            for (long[] rowGroup : encodeNanos) {
+                for (int i = 0; i < encodedColumns.length; i++) {
+                    columns.merge(encodedColumns[i], rowGroup[i], Long::sum);
+                }
+            }
+        }
+
+        /**
+         * Adds the cipher time of the chunks of this file to the totals of their columns.
+         */
+        private void addEncryptedColumns(Map<String, EncryptedColumn> columns) {
+            if (encryption == null || footer == null) return;
+            List<BlockMetaData> blocks = footer.getBlocks();
+            for (int b = 0; b < blocks.size() && b < encryptNanos.length; b++) {
+                List<ColumnChunkMetaData> chunks = blocks.get(b).getColumns();
+                for (int c = 0; c < chunks.size(); c++) {
+                    ColumnChunkMetaData chunk = chunks.get(c);
+                    String key = encryption.keyOf(chunk.getPath());
+                    if ("none".equals(key)) continue;
+                    EncryptedColumn column = columns.computeIfAbsent(chunk.getPath().toDotString(), path -> new EncryptedColumn(path, key));
+                    column.bytes += chunk.getTotalSize();
+                    column.nanos += encryptNanos[b][c];
+                }
+            }
+        }
+
+        private JSONObject rowGroupJson(BlockMetaData block, int index) {
+            JSONObject json = new JSONObject();
+            json.put("rows", block.getRowCount());
+            json.put("uncompressedSize", block.getTotalByteSize());
+            json.put("compressedSize", block.getCompressedSize());
+            if (index < encodeNanos.size()) {
+                JSONArray topLevelColumns = new JSONArray();
+                for (int i = 0; i < encodedColumns.length; i++) {
+                    topLevelColumns.put(new JSONObject()
+                            .put("name", encodedColumns[i])
+                            .put("encodeMillis", millis(encodeNanos.get(index)[i])));
+                }
+                json.put("topLevelColumns", topLevelColumns);
+            }
+            JSONArray columns = new JSONArray();
+            List<ColumnChunkMetaData> chunks = block.getColumns();
+            for (int c = 0; c < chunks.size(); c++) {
+                ColumnChunkMetaData column = chunks.get(c);
+                JSONObject chunk = new JSONObject();
+                chunk.put("path", column.getPath().toDotString());
+                chunk.put("codec", column.getCodec().name());
+                JSONArray encodings = new JSONArray();
+                for (Encoding encoding : new TreeSet<>(column.getEncodings())) {
+                    encodings.put(encoding.name());
+                }
+                chunk.put("encodings", encodings);
+                chunk.put("values", column.getValueCount());
+                chunk.put("uncompressedSize", column.getTotalUncompressedSize());
+                chunk.put("compressedSize", column.getTotalSize());
+                // The dictionary page is written right before the first data page of the chunk
+                chunk.put("dictionaryPageSize", column.hasDictionaryPage()
+                        ? column.getFirstDataPageOffset() - column.getDictionaryPageOffset() : 0);
+                chunk.put("bloomFilterSize", column.getBloomFilterOffset() >= 0
+                        ? Math.max(column.getBloomFilterLength(), 0) : 0);
+                if (encryption != null) {
+                    chunk.put("encryptionKey", encryption.keyOf(column.getPath()));
+                    if (index < encryptNanos.length) {
+                        chunk.put("encryptMillis", millis(encryptNanos[index][c]));
+                    }
+                }
+                columns.put(chunk);
+            }
+            json.put("columns", columns);
+            return json;
+        }
+    }
+
+    /**
+     * Cipher time and size of the chunks of one encrypted column, over all row groups and files.
+     */
+    private static final class EncryptedColumn {
+        private final String path;
+        private final String key;
+        private long bytes;
+        private long nanos;
+
+        EncryptedColumn(String path, String key) {
+            this.path = path;
+            this.key = key;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("path", path);
+            json.put("key", key);
+            json.put("bytes", bytes);
+            json.put("encryptMillis", millis(nanos));
+            return json;
+        }
+    }
+
+    private static final class MeteredOutputFile implements OutputFile {
+        private final OutputFile delegate;
+        private final FileMetrics metrics;
+
+        MeteredOutputFile(OutputFile delegate, FileMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+            return new MeteredStream(delegate.create(blockSizeHint), metrics);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+            return new MeteredStream(delegate.createOrOverwrite(blockSizeHint), metrics);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return delegate.supportsBlockSize();
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return delegate.defaultBlockSize();
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+    }
+
+    private static final class MeteredStream extends PositionOutputStream {
+        private final PositionOutputStream delegate;
+        private final FileMetrics metrics;
+
+        MeteredStream(PositionOutputStream delegate, FileMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public long getPos() throws IOException {
+            return delegate.getPos();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            delegate.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            metrics.bytes = delegate.getPos();
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,719 @@
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Per-column writers compiled once from the Parquet schema.
+ * <p>
+ * Field indexes, value conversions and repetition handling are resolved when the plan is built, so
+ * writing a row only dispatches each value to the writer of its column instead of inspecting the
+ * JSON field definitions and the Java type of every value again.
+ * <p>
+ * The plan is bound to the {@link ColumnValues} of each top-level column and is itself the record
+ * handed to the {@link org.apache.parquet.hadoop.ParquetWriter}: every write pulls the next row from
+ * the sources and shreds it either straight into a {@link RecordConsumer} or into a {@link Group}.
+ * <p>
+ * Group columns are shredded into a record consumer without recursion: the writer of a top-level group
+ * walks its value with a stack of one reusable frame per nesting level, so lists, maps and repeated
+ * groups cost one step per element and field whatever their depth.
+ */
+final class WritePlan {
+
+    // About one row in this many is timed when encode times are measured
+    private static final int TIMED_ROW_INTERVAL = 64;
+
+    private final FieldWriter[] columns;
+    private final ColumnValues[] sources;
+    // Generators whose values can be written without boxing, by column
+    private final ColumnGenerator[] generators;
+    // Time spent writing the values of each column in the timed rows of the current row group, when measured
+    private long[] encodeNanos;
+    private Consumer<long[]> rowGroupEncodeNanos;
+    private long rows;
+    private long timedRows;
+    private long nextTimedRow;
+    private long sampling = 0x9E3779B97F4A7C15L;
+
+    WritePlan(MessageType schema, ColumnValues[] sources) {
+        this.columns = compileFields(schema);
+        this.sources = sources;
+        this.generators = new ColumnGenerator[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (sources[i] instanceof ColumnGenerator && columns[i] instanceof PrimitiveWriter
+                    && ((ColumnGenerator) sources[i]).isPrimitive()) {
+                generators[i] = (ColumnGenerator) sources[i];
+            }
+        }
+    }
+
+    /**
+     * Measures from now on the time spent handing the values of every column to the record consumer,
+     * which includes encoding them and compressing the pages they fill. About one row in
+     * {@value #TIMED_ROW_INTERVAL}, picked at random, is timed, so that measuring barely slows writing
+     * down. The times of every row group are scaled to all of its rows and handed by column to
+     * {@code rowGroupEncodeNanos} once {@link #endRowGroup()} is called.
+     */
+    void enableTiming(Consumer<long[]> rowGroupEncodeNanos) {
+        this.encodeNanos = new long[columns.length];
+        this.rowGroupEncodeNanos = rowGroupEncodeNanos;
+    }
+
+    String[] getColumnNames() {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].name;
+        }
+        return names;
+    }
+
+    /**
+     * Called by the write support when the writer has flushed the rows written so far as a row group.
+     */
+    void endRowGroup() {
+        if (encodeNanos == null || rows == 0) return;
+        long[] estimated = new long[encodeNanos.length];
+        for (int i = 0; i < estimated.length; i++) {
+            estimated[i] = timedRows > 0 ? Math.round((double) encodeNanos[i] * rows / timedRows) : 0;
+        }
+        rowGroupEncodeNanos.accept(estimated);
+        Arrays.fill(encodeNanos, 0);
+        nextTimedRow -= rows;
+        rows = 0;
+        timedRows = 0;
+    }
+
+    // Rows between two timed ones, at random so that they do not line up with the batches of values
+    // that encoders pack or flush together, which would make every timed row pay for a whole batch
+    private long nextTimedRowGap() {
+        sampling ^= sampling << 13;
+        sampling ^= sampling >>> 7;
+        sampling ^= sampling << 17;
+        return Math.floorMod(sampling, 2 * TIMED_ROW_INTERVAL - 1);
+    }
+
+    /**
+     * Writes the next row of the sources to a record consumer, between startMessage and endMessage.
+     */
+    void writeRow(RecordConsumer consumer) {
+        boolean timed = encodeNanos != null && rows++ == nextTimedRow;
+        if (timed) {
+            timedRows++;
+            nextTimedRow = rows + nextTimedRowGap();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            ColumnGenerator generator = generators[i];
+            Object value = null;
+            if (generator != null) {
+                if (!generator.advance()) continue;
+            } else if (sources[i] != null) {
+                value = next(sources[i]);
+                if (value == null || value == JSONObject.NULL) continue;
+            } else {
+                continue;
+            }
+            long start = timed ? System.nanoTime() : 0;
+            if (generator != null) {
+                ((PrimitiveWriter) columns[i]).write(consumer, generator);
+            } else {
+                columns[i].write(consumer, value);
+            }
+            if (timed) {
+                encodeNanos[i] += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Writes the next row of the sources to a group.
+     */
+    void writeRow(Group group) {
+        for (int i = 0; i < columns.length; i++) {
+            if (sources[i] != null) {
+                Object value = next(sources[i]);
+                if (value != null && value != JSONObject.NULL) {
+                    columns[i].write(group, value);
+                }
+            }
+        }
+    }
+
+    private static Object next(ColumnValues source) {
+        try {
+            return source.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FieldWriter[] compileFields(GroupType groupType) {
+        List<Type> fields = groupType.getFields();
+        FieldWriter[] writers = new FieldWriter[fields.size()];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = compile(fields.get(i), i);
+        }
+        return writers;
+    }
+
+    private static FieldWriter compile(Type type, int index) {
+        if (!type.isPrimitive()) {
+            return new GroupWriter(type.asGroupType(), index);
+        }
+
+        PrimitiveType primitiveType = type.asPrimitiveType();
+        LogicalTypeAnnotation logicalType = primitiveType.getLogicalTypeAnnotation();
+        switch (primitiveType.getPrimitiveTypeName()) {
+            case INT32:
+                return new IntWriter(type, index);
+            case INT64:
+                return new LongWriter(type, index);
+            case BOOLEAN:
+                return new BooleanWriter(type, index);
+            case FLOAT:
+                return new FloatWriter(type, index);
+            case DOUBLE:
+                return new DoubleWriter(type, index);
+            case FIXED_LEN_BYTE_ARRAY:
+                if (logicalType instanceof LogicalTypeAnnotation.Float16LogicalTypeAnnotation) {
+                    return new Float16Writer(type, index);
+                }
+                return new BinaryWriter(type, index, logicalType instanceof LogicalTypeAnnotation.UUIDLogicalTypeAnnotation);
+            case BINARY:
+            case INT96:
+            default:
+                return new BinaryWriter(type, index, false);
+        }
+    }
+
+    /**
+     * The value a column of {@code type} holds once {@code value} is written to it, as the Java type
+     * compared by {@link PrimitiveType#comparator()}.
+     */
+    static Object primitiveValue(PrimitiveType type, Object value) {
+        String name = type.getName();
+        switch (type.getPrimitiveTypeName()) {
+            case INT32:
+                if (!(value instanceof Number)) throw mismatch(name, value);
+                return ((Number) value).intValue();
+            case INT64:
+                if (!(value instanceof Number)) throw mismatch(name, value);
+                return ((Number) value).longValue();
+            case BOOLEAN:
+                if (!(value instanceof Boolean)) throw mismatch(name, value);
+                return value;
+            case FLOAT:
+                if (!(value instanceof Number)) throw mismatch(name, value);
+                return ((Number) value).floatValue();
+            case DOUBLE:
+                if (!(value instanceof Number)) throw mismatch(name, value);
+                return ((Number) value).doubleValue();
+            case FIXED_LEN_BYTE_ARRAY:
+                LogicalTypeAnnotation logicalType = type.getLogicalTypeAnnotation();
+                if (logicalType instanceof LogicalTypeAnnotation.Float16LogicalTypeAnnotation) {
+                    return Binary.fromConstantByteArray(GenerateParquet.encodeFloat16ToBytes(value));
+                }
+                return toBinary(name, value, logicalType instanceof LogicalTypeAnnotation.UUIDLogicalTypeAnnotation);
+            case BINARY:
+            case INT96:
+            default:
+                return toBinary(name, value, false);
+        }
+    }
+
+    private static Binary toBinary(String name, Object value, boolean uuid) {
+        if (value instanceof String) {
+            // Handle UUID string by converting to 16-byte array if the field is UUID. Strings are
+            // encoded to an array rather than with Binary.fromString, whose ByteBuffer-backed values
+            // are slower to hash and compare in the dictionary and statistics.
+            String text = (String) value;
+            return Binary.fromConstantByteArray(uuid ? GenerateParquet.hexStringToByteArray(text) : text.getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof BigDecimal) {
+            return Binary.fromConstantByteArray(((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof byte[]) {
+            return Binary.fromConstantByteArray((byte[]) value);
+        }
+        throw mismatch(name, value);
+    }
+
+    private static IllegalArgumentException mismatch(String name, Object value) {
+        return new IllegalArgumentException("Error adding value to group. Value type mismatch for column: " + name
+                + " (" + value.getClass().getName() + ")");
+    }
+
+    /**
+     * Writer of one field, a leaf column or a group, given its value in a row: a single value, or a
+     * JSON array of the values of a repeated field.
+     */
+    abstract static class FieldWriter {
+        final String name;
+        final int index;
+
+        FieldWriter(Type type, int index) {
+            this.name = type.getName();
+            this.index = index;
+        }
+
+        abstract void write(RecordConsumer consumer, Object value);
+
+        abstract void write(Group parent, Object value);
+
+        IllegalArgumentException mismatch(Object value) {
+            return WritePlan.mismatch(name, value);
+        }
+    }
+
+    /**
+     * Writer of a leaf column, converting every single value to its physical type.
+     */
+    private abstract static class LeafWriter extends FieldWriter {
+        LeafWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void write(RecordConsumer consumer, Object value) {
+            if (value instanceof JSONArray) {
+                JSONArray values = (JSONArray) value;
+                if (values.isEmpty()) {
+                    // Parquet does not allow empty fields, a missing field is written instead
+                    return;
+                }
+                consumer.startField(name, index);
+                for (int i = 0; i < values.length(); i++) {
+                    writeValue(consumer, values.get(i));
+                }
+                consumer.endField(name, index);
+            } else {
+                consumer.startField(name, index);
+                writeValue(consumer, value);
+                consumer.endField(name, index);
+            }
+        }
+
+        @Override
+        void write(Group parent, Object value) {
+            if (value instanceof JSONArray) {
+                JSONArray values = (JSONArray) value;
+                for (int i = 0; i < values.length(); i++) {
+                    writeValue(parent, values.get(i));
+                }
+            } else {
+                writeValue(parent, value);
+            }
+        }
+
+        abstract void writeValue(RecordConsumer consumer, Object value);
+
+        abstract void writeValue(Group parent, Object value);
+    }
+
+    private static final class GroupWriter extends FieldWriter {
+        private final FieldWriter[] fields;
+        private final FieldWriter element;
+        // Number of group levels from this group down to its deepest nested group
+        private final int depth;
+        // Frames of the groups being written, by level, allocated on first use
+        private Frame[] stack;
+
+        GroupWriter(GroupType type, int index) {
+            super(type, index);
+            this.fields = compileFields(type);
+            this.element = type.containsField("element") ? fields[type.getFieldIndex("element")] : null;
+            int nested = 0;
+            for (FieldWriter field : fields) {
+                if (field instanceof GroupWriter) {
+                    nested = Math.max(nested, ((GroupWriter) field).depth);
+                }
+            }
+            this.depth = nested + 1;
+        }
+
+        /**
+         * Writes the value of this field and of every group nested in it, iterating over the levels
+         * with {@link #stack} instead of recursing into the writers of the nested groups.
+         */
+        @Override
+        void write(RecordConsumer consumer, Object value) {
+            if (value instanceof JSONArray && ((JSONArray) value).isEmpty()) {
+                // Parquet does not allow empty fields, a missing field is written instead
+                return;
+            }
+            Frame[] stack = frames();
+            int top = 0;
+            consumer.startField(name, index);
+            stack[0].open(this, value);
+            while (true) {
+                Frame frame = stack[top];
+                if (frame.object == null && frame.plain == null) {
+                    if (frame.item == frame.items) {
+                        consumer.endField(frame.writer.name, frame.writer.index);
+                        frame.clear();
+                        if (top == 0) {
+                            return;
+                        }
+                        top--;
+                    } else {
+                        frame.startItem(consumer);
+                    }
+                    continue;
+                }
+
+                FieldWriter child = null;
+                Object childValue = null;
+                if (frame.object == null) {
+                    // Plain value of an array, held in the "element" field of its group
+                    if (frame.field++ == 0) {
+                        child = frame.writer.element;
+                        childValue = frame.plain;
+                    }
+                } else {
+                    FieldWriter[] fields = frame.writer.fields;
+                    while (frame.field < fields.length) {
+                        FieldWriter field = fields[frame.field++];
+                        Object fieldValue = frame.object.opt(field.name);
+                        if (fieldValue != null) {
+                            frame.written++;
+                            if (fieldValue != JSONObject.NULL) {
+                                child = field;
+                                childValue = fieldValue;
+                                break;
+                            }
+                        }
+                    }
+                }
+
+                if (child == null) {
+                    if (frame.object != null) {
+                        frame.writer.checkUnknownFields(frame.object, frame.written);
+                    }
+                    consumer.endGroup();
+                    frame.object = null;
+                    frame.plain = null;
+                } else if (child instanceof GroupWriter) {
+                    if (!(childValue instanceof JSONArray && ((JSONArray) childValue).isEmpty())) {
+                        consumer.startField(child.name, child.index);
+                        stack[++top].open((GroupWriter) child, childValue);
+                    }
+                } else {
+                    child.write(consumer, childValue);
+                }
+            }
+        }
+
+        private Frame[] frames() {
+            if (stack == null) {
+                stack = new Frame[depth];
+                for (int i = 0; i < depth; i++) {
+                    stack[i] = new Frame();
+                }
+            }
+            return stack;
+        }
+
+        @Override
+        void write(Group parent, Object value) {
+            if (value instanceof JSONArray) {
+                JSONArray values = (JSONArray) value;
+                for (int i = 0; i < values.length(); i++) {
+                    writeElement(parent, values.get(i));
+                }
+            } else {
+                writeObject(parent, value);
+            }
+        }
+
+        // An element of an array given for this group: an object, or a plain value of its "element" field
+        private void writeElement(Group parent, Object value) {
+            if (value instanceof JSONObject) {
+                writeObject(parent, value);
+            } else {
+                elementWriter().write(parent.addGroup(index), value);
+            }
+        }
+
+        private void writeObject(Group parent, Object value) {
+            JSONObject object = asObject(value);
+            Group group = parent.addGroup(index);
+            int written = 0;
+            for (FieldWriter field : fields) {
+                Object fieldValue = object.opt(field.name);
+                if (fieldValue != null) {
+                    written++;
+                    if (fieldValue != JSONObject.NULL) {
+                        field.write(group, fieldValue);
+                    }
+                }
+            }
+            checkUnknownFields(object, written);
+        }
+
+        private JSONObject asObject(Object value) {
+            if (!(value instanceof JSONObject)) {
+                throw mismatch(value);
+            }
+            return (JSONObject) value;
+        }
+
+        private void checkUnknownFields(JSONObject object, int written) {
+            if (written != object.length()) {
+                for (String key : object.keySet()) {
+                    boolean known = false;
+                    for (FieldWriter field : fields) {
+                        known |= field.name.equals(key);
+                    }
+                    if (!known) {
+                        throw new IllegalArgumentException("Unknown field " + key + " in group " + name);
+                    }
+                }
+            }
+        }
+
+        private FieldWriter elementWriter() {
+            if (element == null) {
+                throw new IllegalArgumentException("Group " + name + " has no 'element' field for array value");
+            }
+            return element;
+        }
+    }
+
+    /**
+     * State of one level of {@link GroupWriter#write(RecordConsumer, Object)}: a group field, the items
+     * of its value and the next field of the item being written.
+     */
+    private static final class Frame {
+        private GroupWriter writer;
+        // The items of the field, or null when its value is a single object
+        private JSONArray array;
+        private Object single;
+        private int items;
+        private int item;
+        // Object of the item being written, or the plain array value it wraps; both null between items
+        private JSONObject object;
+        private Object plain;
+        private int field;
+        private int written;
+
+        void open(GroupWriter writer, Object value) {
+            this.writer = writer;
+            if (value instanceof JSONArray) {
+                this.array = (JSONArray) value;
+                this.single = null;
+                this.items = array.length();
+            } else {
+                this.array = null;
+                this.single = value;
+                this.items = 1;
+            }
+            this.item = 0;
+            this.object = null;
+            this.plain = null;
+        }
+
+        void startItem(RecordConsumer consumer) {
+            Object value = array != null ? array.get(item) : single;
+            item++;
+            if (value instanceof JSONObject) {
+                object = (JSONObject) value;
+            } else if (array == null) {
+                throw writer.mismatch(value);
+            } else {
+                // Array of plain values: one group per value holding it in its "element" field
+                plain = value;
+                writer.elementWriter();
+            }
+            field = 0;
+            written = 0;
+            consumer.startGroup();
+        }
+
+        /**
+         * Drops the references to the value once the field is written.
+         */
+        void clear() {
+            writer = null;
+            array = null;
+            single = null;
+        }
+    }
+
+    /**
+     * Writer of a primitive column that can also take values from a generator without boxing them.
+     */
+    private abstract static class PrimitiveWriter extends LeafWriter {
+        PrimitiveWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        void write(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.startField(name, index);
+            writeGenerated(consumer, generator);
+            consumer.endField(name, index);
+        }
+
+        abstract void writeGenerated(RecordConsumer consumer, ColumnGenerator generator);
+    }
+
+    private static final class IntWriter extends PrimitiveWriter {
+        IntWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            consumer.addInteger(((Number) value).intValue());
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            parent.add(index, ((Number) value).intValue());
+        }
+
+        @Override
+        void writeGenerated(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.addInteger((int) generator.longValue());
+        }
+    }
+
+    private static final class LongWriter extends PrimitiveWriter {
+        LongWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            consumer.addLong(((Number) value).longValue());
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            parent.add(index, ((Number) value).longValue());
+        }
+
+        @Override
+        void writeGenerated(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.addLong(generator.longValue());
+        }
+    }
+
+    private static final class BooleanWriter extends PrimitiveWriter {
+        BooleanWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            if (!(value instanceof Boolean)) throw mismatch(value);
+            consumer.addBoolean((Boolean) value);
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            if (!(value instanceof Boolean)) throw mismatch(value);
+            parent.add(index, (boolean) (Boolean) value);
+        }
+
+        @Override
+        void writeGenerated(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.addBoolean(generator.booleanValue());
+        }
+    }
+
+    private static final class FloatWriter extends PrimitiveWriter {
+        FloatWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            consumer.addFloat(((Number) value).floatValue());
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            parent.add(index, ((Number) value).floatValue());
+        }
+
+        @Override
+        void writeGenerated(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.addFloat((float) generator.doubleValue());
+        }
+    }
+
+    private static final class DoubleWriter extends PrimitiveWriter {
+        DoubleWriter(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            consumer.addDouble(((Number) value).doubleValue());
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            if (!(value instanceof Number)) throw mismatch(value);
+            parent.add(index, ((Number) value).doubleValue());
+        }
+
+        @Override
+        void writeGenerated(RecordConsumer consumer, ColumnGenerator generator) {
+            consumer.addDouble(generator.doubleValue());
+        }
+    }
+
+    private static final class Float16Writer extends LeafWriter {
+        Float16Writer(Type type, int index) {
+            super(type, index);
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            consumer.addBinary(Binary.fromConstantByteArray(GenerateParquet.encodeFloat16ToBytes(value)));
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            parent.add(index, Binary.fromConstantByteArray(GenerateParquet.encodeFloat16ToBytes(value)));
+        }
+    }
+
+    private static final class BinaryWriter extends LeafWriter {
+        private final boolean uuid;
+
+        BinaryWriter(Type type, int index, boolean uuid) {
+            super(type, index);
+            this.uuid = uuid;
+        }
+
+        @Override
+        void writeValue(RecordConsumer consumer, Object value) {
+            consumer.addBinary(toBinary(name, value, uuid));
+        }
+
+        @Override
+        void writeValue(Group parent, Object value) {
+            parent.add(index, toBinary(name, value, uuid));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.InterruptedIOException;
+
+/**
+ * Memory budget shared by the Parquet writers of the process, set with {@code --memory-budget}.
+ * <p>
+ * A Parquet writer buffers a whole row group before writing it out, so every writer reserves its row
+ * group size when it is created and releases it when it is closed. A writer gets what is left of the
+ * budget, up to its row group size: when less is left, its row groups are made smaller and flushed
+ * earlier. It waits for other writers to finish when even a quarter of the budget, or its row group
+ * size if smaller, is not left. parquet-java's own {@code MemoryManager} is not used by
+ * {@code ParquetWriter}, only by {@code ParquetOutputFormat}.
+ */
+final class WriterMemoryPool {
+
+    private final long budget;
+    private long available;
+
+    WriterMemoryPool(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+        }
+        this.budget = budget;
+        this.available = budget;
+    }
+
+    /**
+     * Reserves memory for the row groups of a writer asking for {@code rowGroupSize} bytes, waiting
+     * until enough is available. Returns the row group size the writer may use, to be given back with
+     * {@link #release(long)}.
+     */
+    synchronized long reserve(long rowGroupSize) throws InterruptedIOException {
+        long minimum = Math.min(rowGroupSize, Math.max(budget / 4, 1));
+        try {
+            while (available < minimum) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the memory budget");
+        }
+        long reserved = Math.min(rowGroupSize, available);
+        available -= reserved;
+        return reserved;
+    }
+
+    synchronized void release(long reserved) {
+        available += reserved;
+        notifyAll();
+    }
+}